@@ -0,0 +1,154 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Physical memory kept outside the Java heap, in direct ByteBuffers or in a memory-mapped file.
+// Memory of any size is split into 1 GB chunks (a buffer is limited to 2 GB); chunks are a whole number of pages,
+// so a single access never spans two chunks. A mapped file keeps the memory contents after the simulation ends,
+// flush() writes them out, which makes a snapshot of the machine's memory a file copy.
+
+public class BufferMemory implements PhysicalMemory {
+
+    private static final int CHUNK_SHIFT = 30;
+    private static final long CHUNK_MASK = (1L << CHUNK_SHIFT) - 1;
+
+    private final ByteBuffer[] chunks;
+    private final long size;
+
+    private BufferMemory(ByteBuffer[] chunks, long size) {
+        this.chunks = chunks;
+        this.size = size;
+        for (ByteBuffer chunk : chunks) {
+            chunk.order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+    // Off-heap memory of the given size, zero filled
+    public static BufferMemory offHeap(long size) {
+        ByteBuffer[] chunks = new ByteBuffer[chunkCount(size)];
+        for (int i = 0; i < chunks.length; i++) {
+            chunks[i] = ByteBuffer.allocateDirect(chunkSize(size, i));
+        }
+        return new BufferMemory(chunks, size);
+    }
+
+    // Memory mapped to a file of the given size, created (zero filled) if it does not exist.
+    // An existing file's contents become the initial memory contents.
+    public static BufferMemory mapped(Path file, long size) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer[] chunks = new ByteBuffer[chunkCount(size)];
+            for (int i = 0; i < chunks.length; i++) {
+                // The mapping stays valid after the channel is closed
+                chunks[i] = channel.map(FileChannel.MapMode.READ_WRITE, (long) i << CHUNK_SHIFT, chunkSize(size, i));
+            }
+            return new BufferMemory(chunks, size);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not map physical memory to " + file, e);
+        }
+    }
+
+    private static int chunkCount(long size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Memory size must be positive");
+        }
+        return (int) ((size + CHUNK_MASK) >>> CHUNK_SHIFT);
+    }
+
+    private static int chunkSize(long size, int chunk) {
+        return (int) Math.min(1L << CHUNK_SHIFT, size - ((long) chunk << CHUNK_SHIFT));
+    }
+
+    // Chunk holding the address
+    private ByteBuffer chunk(long address) {
+        return chunks[(int) (address >>> CHUNK_SHIFT)];
+    }
+
+    // Index of the address within its chunk
+    private static int index(long address) {
+        return (int) (address & CHUNK_MASK);
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public byte get(long address) {
+        return chunk(address).get(index(address));
+    }
+
+    public void put(long address, byte value) {
+        chunk(address).put(index(address), value);
+    }
+
+    public short getShort(long address) {
+        return chunk(address).getShort(index(address));
+    }
+
+    public void putShort(long address, short value) {
+        chunk(address).putShort(index(address), value);
+    }
+
+    public int getInt(long address) {
+        return chunk(address).getInt(index(address));
+    }
+
+    public void putInt(long address, int value) {
+        chunk(address).putInt(index(address), value);
+    }
+
+    public long getLong(long address) {
+        return chunk(address).getLong(index(address));
+    }
+
+    public void putLong(long address, long value) {
+        chunk(address).putLong(index(address), value);
+    }
+
+    public void read(long address, byte[] dst, int off, int len) {
+        chunk(address).get(index(address), dst, off, len);
+    }
+
+    public void write(long address, byte[] src, int off, int len) {
+        chunk(address).put(index(address), src, off, len);
+    }
+
+    public void read(long address, ByteBuffer dst, int dstIndex, int len) {
+        dst.put(dstIndex, chunk(address), index(address), len);
+    }
+
+    public void write(long address, ByteBuffer src, int srcIndex, int len) {
+        chunk(address).put(index(address), src, srcIndex, len);
+    }
+
+    // Fills in place, eight bytes at a time, so zeroing a page on every fault allocates nothing
+    public void fill(long address, int len, byte value) {
+        ByteBuffer chunk = chunk(address);
+        int index = index(address);
+        int end = index + len;
+        long pattern = (value & 0xFFL) * 0x0101010101010101L;
+        for (; index + Long.BYTES <= end; index += Long.BYTES) {
+            chunk.putLong(index, pattern);
+        }
+        for (; index < end; index++) {
+            chunk.put(index, value);
+        }
+    }
+
+    public void copy(long from, long to, int len) {
+        // put(int, ByteBuffer, int, int) copies as if through an intermediate buffer, so overlapping ranges are safe
+        chunk(to).put(index(to), chunk(from), index(from), len);
+    }
+
+    public void flush() {
+        for (ByteBuffer chunk : chunks) {
+            if (chunk instanceof MappedByteBuffer mapped) {
+                mapped.force();
+            }
+        }
+    }
+}
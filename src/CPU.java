@@ -0,0 +1,45 @@
+/*
+ * One simulated processor.
+ * Each CPU runs at most one userland process at a time and has its own TLB (Hardware.TLB[id]),
+ * its own timer quantum and its own ready queues. The scheduler owns the CPUs and dispatches ready processes onto them.
+ * The CPU's IdleProcess is not kept in the ready queues, it runs only when the CPU finds nothing else to run.
+ */
+public class CPU {
+
+    // Index of this CPU, also the index of its TLB in Hardware.TLB
+    final int id;
+
+    // Process currently running on this CPU, or null if the CPU has nothing to run
+    volatile PCB runningProcess;
+
+    // Set by the scheduler when it puts a new process on this CPU. The kernel starts that
+    // process once it has finished the current system call and clears the flag.
+    boolean needsStart;
+
+    // This CPU's ready queues, one per priority level.
+    // The CPU takes work from the head of its own queues; other CPUs steal from the tail.
+    final ReadyQueue realTimeQueue = new ReadyQueue(OS.PriorityType.realtime);
+    final ReadyQueue interactiveQueue = new ReadyQueue(OS.PriorityType.interactive);
+    final ReadyQueue backgroundQueue = new ReadyQueue(OS.PriorityType.background);
+
+    // This CPU's IdleProcess, run when none of the ready queues has work for it
+    PCB idleProcess;
+
+    public CPU(int id) {
+        this.id = id;
+    }
+
+    // Returns this CPU's ready queue for a priority level
+    ReadyQueue queue(OS.PriorityType priority) {
+        return switch (priority) {
+            case realtime -> realTimeQueue;
+            case interactive -> interactiveQueue;
+            case background -> backgroundQueue;
+        };
+    }
+
+    // Number of processes waiting in this CPU's ready queues
+    int queuedCount() {
+        return realTimeQueue.size() + interactiveQueue.size() + backgroundQueue.size();
+    }
+}
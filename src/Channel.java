@@ -0,0 +1,111 @@
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+
+/*
+ * A named, bounded message channel between processes (see OS.OpenChannel).
+ * Messages are kept in a fixed-capacity ring buffer, so a fast sender cannot grow the channel without bound:
+ * once it is full, senders either fail (non-blocking send) or are parked until a receiver makes room.
+ * Receivers can take the oldest message of any type or the oldest message of one type.
+ * Only the kernel thread touches a Channel; blocked callers are parked here as their uncompleted SystemCall.
+ */
+public class Channel {
+
+    // Receive filter meaning "any message type"
+    public static final int ANY_TYPE = -1;
+
+    final int id;
+    final String name;
+
+    // Ring buffer of queued messages, oldest at head
+    private final KernelMessage[] buffer;
+    private int head;
+    private int count;
+
+    // Number of opens not yet matched by a close. The channel is destroyed when it drops to zero.
+    int openCount;
+
+    // Senders blocked on a full channel. Each call's ref holds the message it is waiting to queue.
+    final ArrayDeque<SystemCall> blockedSenders = new ArrayDeque<>();
+
+    // Receivers blocked until a message they accept arrives. Each call's arg1 holds its type filter.
+    final ArrayDeque<SystemCall> blockedReceivers = new ArrayDeque<>();
+
+    // Processes blocked in OS.Select with this channel among their sources, each once even if it listed the channel
+    // more than once
+    final LinkedHashSet<PCB> selectors = new LinkedHashSet<>();
+
+    public Channel(int id, String name, int capacity) {
+        this.id = id;
+        this.name = name;
+        this.buffer = new KernelMessage[capacity];
+    }
+
+    boolean isEmpty() {
+        return count == 0;
+    }
+
+    boolean isFull() {
+        return count == buffer.length;
+    }
+
+    // Appends a message. The caller checks isFull() first.
+    void add(KernelMessage message) {
+        buffer[(head + count) % buffer.length] = message;
+        count++;
+    }
+
+    // Removes and returns the oldest message accepted by the filter, or null if there is none.
+    // Messages queued behind the removed one move up one slot so the buffer stays in arrival order.
+    KernelMessage take(int messageType) {
+        for (int i = 0; i < count; i++) {
+            int slot = (head + i) % buffer.length;
+            KernelMessage message = buffer[slot];
+            if (accepts(messageType, message)) {
+                if (i == 0) {
+                    // Taking the oldest message is the common case and only moves the head
+                    buffer[slot] = null;
+                    head = (head + 1) % buffer.length;
+                } else {
+                    for (int j = i; j < count - 1; j++) {
+                        buffer[(head + j) % buffer.length] = buffer[(head + j + 1) % buffer.length];
+                    }
+                    buffer[(head + count - 1) % buffer.length] = null;
+                }
+                count--;
+                return message;
+            }
+        }
+        return null;
+    }
+
+    // Removes and returns the first blocked receiver that accepts the message, or null if none does
+    SystemCall takeReceiverFor(KernelMessage message) {
+        Iterator<SystemCall> it = blockedReceivers.iterator();
+        while (it.hasNext()) {
+            SystemCall receiver = it.next();
+            if (accepts(receiver.arg1, message)) {
+                it.remove();
+                return receiver;
+            }
+        }
+        return null;
+    }
+
+    // Removes and returns the first blocked sender whose message the filter accepts, or null if there is none
+    SystemCall takeSenderFor(int messageType) {
+        Iterator<SystemCall> it = blockedSenders.iterator();
+        while (it.hasNext()) {
+            SystemCall sender = it.next();
+            if (accepts(messageType, (KernelMessage) sender.ref)) {
+                it.remove();
+                return sender;
+            }
+        }
+        return null;
+    }
+
+    private static boolean accepts(int messageType, KernelMessage message) {
+        return messageType == ANY_TYPE || message.getMessageType() == messageType;
+    }
+}
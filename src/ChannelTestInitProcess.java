@@ -0,0 +1,51 @@
+public class ChannelTestInitProcess extends UserlandProcess {
+    @Override
+    public void main() throws InterruptedException {
+        System.out.println("\nChannelTestInitProcess: Starting channel tests...");
+
+        // A channel that is closed while a process is blocked receiving from it. The waiter gets the id rather than
+        // opening it, so this process holds the only open and its close destroys the channel.
+        int closingId = OS.OpenChannel("closing", 1);
+        // A channel the leaver also opens. This process closes its open first, so the leaver's exit destroys it.
+        int abandonedId = OS.OpenChannel(ChannelTestProcess.ABANDONED_CHANNEL_NAME, 1);
+        // A channel the selector waits on, listed twice in its select
+        int selectId = OS.OpenChannel(ChannelTestProcess.SELECT_CHANNEL_NAME, 4);
+
+        System.out.println("ChannelTestInitProcess: Creating producer.");
+        OS.CreateProcess(new ChannelTestProcess(ChannelTestProcess.PRODUCER, -1), OS.PriorityType.interactive);
+        cooperate();
+
+        System.out.println("ChannelTestInitProcess: Creating consumer.");
+        OS.CreateProcess(new ChannelTestProcess(ChannelTestProcess.CONSUMER, -1), OS.PriorityType.interactive);
+        cooperate();
+
+        System.out.println("ChannelTestInitProcess: Creating close waiter.");
+        OS.CreateProcess(new ChannelTestProcess(ChannelTestProcess.CLOSE_WAITER, closingId), OS.PriorityType.interactive);
+        cooperate();
+
+        System.out.println("ChannelTestInitProcess: Creating leaver and a waiter on its channel.");
+        int leaver = OS.CreateProcess(new ChannelTestProcess(ChannelTestProcess.LEAVER, -1), OS.PriorityType.interactive);
+        cooperate();
+        OS.CreateProcess(new ChannelTestProcess(ChannelTestProcess.CLOSE_WAITER, abandonedId), OS.PriorityType.interactive);
+        cooperate();
+
+        System.out.println("ChannelTestInitProcess: Creating selector.");
+        OS.CreateProcess(new ChannelTestProcess(ChannelTestProcess.SELECTOR, -1), OS.PriorityType.interactive);
+        cooperate();
+
+        // Give the waiters and the selector time to block before destroying the channels under the waiters and
+        // waking the selector
+        OS.Sleep(500);
+        System.out.println("ChannelTestInitProcess: Sending on channel " + selectId + ".");
+        OS.ChannelSend(selectId, new KernelMessage(0, 0, 1, "wake".getBytes()));
+        OS.CloseChannel(selectId);
+        System.out.println("ChannelTestInitProcess: Closing channel " + closingId + ".");
+        OS.CloseChannel(closingId);
+        // The leaver still has the abandoned channel open until it exits
+        OS.CloseChannel(abandonedId);
+        OS.SendMessage(new KernelMessage(OS.GetPID(), leaver, 0, new byte[0]));
+
+        System.out.println("ChannelTestInitProcess: Exiting.");
+        OS.Exit();
+    }
+}
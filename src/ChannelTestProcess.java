@@ -0,0 +1,110 @@
+/**
+ * ChannelTestProcess tests message channels (OS.OpenChannel, ChannelSend, ChannelReceive, CloseChannel).
+ * The producer fills a channel of capacity 2, sees a non-blocking send fail and then blocks sending a third
+ * message. The consumer, started while the producer is blocked, receives by type: the newest message first, which
+ * makes room for the producer's blocked message, then that message, then the oldest. The close waiter blocks
+ * receiving from a channel that ChannelTestInitProcess then destroys, and is woken with no message. A second close
+ * waiter blocks on a channel whose last open belongs to the leaver, which exits without closing it once
+ * ChannelTestInitProcess has closed its own open and messaged it. Both waiters first check that they cannot close a
+ * channel they did not open.
+ * The selector sees a select and a WaitForMessage time out, then selects on a channel listed twice until
+ * ChannelTestInitProcess sends on it (OS.Select, OS.WaitForMessage(timeout)).
+ * A process blocked on a channel cannot report that it has blocked, so the consumer and ChannelTestInitProcess sleep
+ * before the steps that need the producer, a waiter or the selector to be blocked.
+ */
+public class ChannelTestProcess extends UserlandProcess {
+
+    public static final char PRODUCER = 'P';
+    public static final char CONSUMER = 'C';
+    public static final char CLOSE_WAITER = 'W';
+    public static final char LEAVER = 'L';
+    public static final char SELECTOR = 'S';
+
+    // Channel the selector waits on, ChannelTestInitProcess sends on it
+    public static final String SELECT_CHANNEL_NAME = "select";
+    // Channel the leaver opens and leaves open when it exits
+    public static final String ABANDONED_CHANNEL_NAME = "abandoned";
+
+    private static final String CHANNEL_NAME = "demo";
+    private static final int CAPACITY = 2;
+
+    // Channel the close waiters block on, -1 for the other roles
+    private final int channelId;
+
+    public ChannelTestProcess(char role, int channelId) {
+        super(role);
+        this.channelId = channelId;
+    }
+
+    @Override
+    public void main() throws InterruptedException {
+        switch (role) {
+            case PRODUCER -> produce();
+            case CONSUMER -> consume();
+            case CLOSE_WAITER -> waitForClose();
+            case LEAVER -> leave();
+            case SELECTOR -> select();
+        }
+        OS.Exit();
+    }
+
+    // Fills the channel, then blocks on a full channel until the consumer makes room
+    private void produce() throws InterruptedException {
+        int id = OS.OpenChannel(CHANNEL_NAME, CAPACITY);
+        OS.ChannelSend(id, message(1, "first"), false);
+        OS.ChannelSend(id, message(2, "second"), false);
+        check(!OS.ChannelSend(id, message(1, "dropped"), false), "non-blocking send on a full channel fails");
+
+        System.out.println("ChannelTestProcess [P]: Channel is full, blocking on send.");
+        check(OS.ChannelSend(id, message(3, "third")), "blocking send completes once the consumer makes room");
+        OS.CloseChannel(id);
+    }
+
+    // Starts after the producer has blocked and receives the three messages by type
+    private void consume() throws InterruptedException {
+        int id = OS.OpenChannel(CHANNEL_NAME, CAPACITY);
+        OS.Sleep(200);
+
+        KernelMessage km = OS.ChannelReceive(id, 2, false);
+        check(km != null && km.getMessageType() == 2, "receive by type skips the older message of another type");
+        km = OS.ChannelReceive(id, 3, true);
+        check(km != null && km.getMessageType() == 3, "message of the blocked sender was queued when room was made");
+        km = OS.ChannelReceive(id);
+        check(km != null && km.getMessageType() == 1, "oldest message is still queued");
+        km = OS.ChannelReceive(id, Channel.ANY_TYPE, false);
+        check(km == null, "non-blocking receive on an empty channel returns null");
+        OS.CloseChannel(id);
+    }
+
+    // Blocks on a channel that is destroyed while it waits
+    private void waitForClose() throws InterruptedException {
+        check(!OS.CloseChannel(channelId), "closing channel " + channelId + " without having opened it is refused");
+        System.out.println("ChannelTestProcess [W]: Blocking on receive from channel " + channelId + ".");
+        KernelMessage km = OS.ChannelReceive(channelId);
+        check(km == null, "blocked receive on channel " + channelId + " returns null when the channel is destroyed");
+    }
+
+    // Opens a channel and exits without closing it once ChannelTestInitProcess has closed its own open
+    private void leave() throws InterruptedException {
+        OS.OpenChannel(ABANDONED_CHANNEL_NAME, 1);
+        OS.WaitForMessage();
+        System.out.println("ChannelTestProcess [L]: Exiting with channel " + ABANDONED_CHANNEL_NAME + " still open.");
+    }
+
+    // Waits with timeouts on sources that stay empty, then blocks until ChannelTestInitProcess sends
+    private void select() throws InterruptedException {
+        int id = OS.OpenChannel(SELECT_CHANNEL_NAME, 4);
+        check(OS.Select(new int[]{id}, 100) == -1, "select on an empty channel times out");
+        check(OS.WaitForMessage(100) == null, "wait for a message times out");
+
+        System.out.println("ChannelTestProcess [S]: Blocking on select of channel " + id + " listed twice.");
+        int ready = OS.Select(new int[]{id, id}, -1);
+        KernelMessage km = OS.ChannelReceive(id, Channel.ANY_TYPE, false);
+        check(ready == 0 && km != null, "select of a channel listed twice wakes once when it gets a message");
+        OS.CloseChannel(id);
+    }
+
+    private KernelMessage message(int type, String text) {
+        return new KernelMessage(0, 0, type, text.getBytes());
+    }
+}
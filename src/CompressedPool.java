@@ -0,0 +1,132 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/*
+ * In-memory pool of compressed swapped out pages, kept between physical memory and the swap file.
+ * A dirty page being evicted is compressed into the pool instead of being written to disk. Pages that are all zeroes
+ * are not stored at all, and pages that do not compress well go to the swap file as before.
+ * The pool has a size budget; when compressed pages take more than that, the kernel moves the oldest ones on to
+ * the swap file (see Kernel.spillCompressedPages).
+ * A page's compressed bytes are kept in its page table entry (VirtualToPhysicalMapping.compressed).
+ * Only the kernel thread uses the pool.
+ */
+public class CompressedPool {
+
+    // Outcome of offering a page to the pool
+    public enum Result {
+        ZERO,          // the page is all zeroes and needs no copy anywhere
+        STORED,        // the page was compressed into the pool
+        INCOMPRESSIBLE // the page does not compress well and has to go to the swap file
+    }
+
+    private static final int PAGE_SIZE = 1024;
+    // A page is only kept if it compresses to at most this many bytes
+    private static final int MAX_COMPRESSED_SIZE = PAGE_SIZE * 3 / 4;
+
+    private final long budget;
+    private long size;
+    // Pages in the pool and the process that owns each, oldest first
+    private final LinkedHashMap<VirtualToPhysicalMapping, PCB> pages = new LinkedHashMap<>();
+
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private final Inflater inflater = new Inflater();
+    // Uncompressed page and compressor output, reused for every page
+    private final byte[] page = new byte[PAGE_SIZE];
+    private final byte[] compressBuffer = new byte[MAX_COMPRESSED_SIZE + 1];
+
+    // Creates a pool that holds up to budget bytes of compressed pages
+    public CompressedPool(long budget) {
+        this.budget = budget;
+    }
+
+    // Number of compressed bytes in the pool
+    public long size() {
+        return size;
+    }
+
+    public int pageCount() {
+        return pages.size();
+    }
+
+    // True if the pool holds more than its budget
+    public boolean overBudget() {
+        return size > budget;
+    }
+
+    // Offers the page in the frame at physicalAddress to the pool
+    public Result store(PCB owner, VirtualToPhysicalMapping mapping, PhysicalMemory memory, long physicalAddress) {
+        memory.read(physicalAddress, page, 0, PAGE_SIZE);
+        if (isZero(page)) {
+            return Result.ZERO;
+        }
+        deflater.reset();
+        deflater.setInput(page);
+        deflater.finish();
+        int length = deflater.deflate(compressBuffer);
+        if (!deflater.finished() || length > MAX_COMPRESSED_SIZE) {
+            return Result.INCOMPRESSIBLE;
+        }
+        byte[] compressed = new byte[length];
+        System.arraycopy(compressBuffer, 0, compressed, 0, length);
+        mapping.compressed = compressed;
+        size += length;
+        pages.put(mapping, owner);
+        return Result.STORED;
+    }
+
+    // Decompresses a page of the pool into dst. Returns false if the data is corrupt.
+    // The page stays in the pool until it is removed.
+    public boolean load(VirtualToPhysicalMapping mapping, byte[] dst) {
+        inflater.reset();
+        inflater.setInput(mapping.compressed);
+        try {
+            return inflater.inflate(dst, 0, PAGE_SIZE) == PAGE_SIZE;
+        } catch (DataFormatException e) {
+            return false;
+        }
+    }
+
+    // Decompresses a page of the pool into the frame at physicalAddress
+    public boolean load(VirtualToPhysicalMapping mapping, PhysicalMemory memory, long physicalAddress) {
+        if (!load(mapping, page)) {
+            return false;
+        }
+        memory.write(physicalAddress, page, 0, PAGE_SIZE);
+        return true;
+    }
+
+    // Drops a page from the pool, once it is back in memory or on disk or when it is freed
+    public void remove(VirtualToPhysicalMapping mapping) {
+        if (mapping.compressed != null) {
+            size -= mapping.compressed.length;
+            mapping.compressed = null;
+            pages.remove(mapping);
+        }
+    }
+
+    // Records that a page in the pool now belongs to another process (see Kernel.SendPages)
+    public void changeOwner(VirtualToPhysicalMapping mapping, PCB owner) {
+        if (mapping.compressed != null) {
+            pages.replace(mapping, owner);
+        }
+    }
+
+    // The page that has been in the pool longest and its owner, or null if the pool is empty
+    public Map.Entry<VirtualToPhysicalMapping, PCB> oldest() {
+        Iterator<Map.Entry<VirtualToPhysicalMapping, PCB>> it = pages.entrySet().iterator();
+        return it.hasNext() ? it.next() : null;
+    }
+
+    private static boolean isZero(byte[] data) {
+        for (byte b : data) {
+            if (b != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
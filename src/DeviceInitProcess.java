@@ -11,6 +11,19 @@ public class DeviceInitProcess extends UserlandProcess {
             System.out.println("DeviceInitProcess: Creating FileTestProcess");
             int pid2 = OS.CreateProcess(new FileTestProcess(), OS.PriorityType.interactive);
             System.out.println("DeviceInitProcess: Created FileTestProcess with PID " + pid2);
+            // create batched file test process
+            System.out.println("DeviceInitProcess: Creating RingTestProcess");
+            int pid3 = OS.CreateProcess(new RingTestProcess(), OS.PriorityType.interactive);
+            System.out.println("DeviceInitProcess: Created RingTestProcess with PID " + pid3);
+            // create page replacement test process
+            System.out.println("DeviceInitProcess: Creating PagingTestProcess");
+            int pid4 = OS.CreateProcess(new PagingTestProcess(PagingTestProcess.EVICTOR, -1), OS.PriorityType.interactive);
+            System.out.println("DeviceInitProcess: Created PagingTestProcess with PID " + pid4);
+            // create copy on write test processes, the reader starts with the writer
+            System.out.println("DeviceInitProcess: Creating copy on write PagingTestProcesses");
+            int pid5 = OS.CreateProcess(new PagingTestProcess(PagingTestProcess.COW_WRITER, -1), OS.PriorityType.interactive);
+            int pid6 = OS.CreateProcess(new PagingTestProcess(PagingTestProcess.COW_READER, pid5), OS.PriorityType.interactive);
+            System.out.println("DeviceInitProcess: Created copy on write PagingTestProcesses with PIDs " + pid5 + " and " + pid6);
         } catch (InterruptedException e) {
             e.printStackTrace();
         }
@@ -0,0 +1,175 @@
+import java.util.Arrays;
+
+/*
+ * Tracks which physical page frames are free.
+ * Free frames are the set bits of a bitmap of longs. A second, summary bitmap has one bit per bitmap word that is set
+ * while the word has any free frame, so finding a free frame looks at one summary word per 4096 frames instead of
+ * one entry per frame: an allocation takes two numberOfTrailingZeros and no scan of used frames.
+ * Allocation starts at a cursor just past the last frame handed out, so frames are reused round robin rather than
+ * always from the bottom of memory.
+ * The kernel also uses an allocator for the slots of the swap file; allocateRun is first fit, which keeps those
+ * packed at the start of the file, and grow adds slots when the file has to get longer.
+ * Only the kernel thread uses the allocator.
+ */
+public class FrameAllocator {
+
+    private int frameCount;
+    // Bit f % 64 of word f / 64 is set when frame f is free
+    private long[] free;
+    // Bit w % 64 of word w / 64 is set when free[w] != 0
+    private long[] summary;
+    private int freeCount;
+    // Index in free[] where the next search starts
+    private int cursor;
+
+    // Creates an allocator with every frame free
+    public FrameAllocator(int frameCount) {
+        if (frameCount < 0) {
+            throw new IllegalArgumentException("Frame count must not be negative");
+        }
+        this.frameCount = frameCount;
+        free = new long[(frameCount + 63) >>> 6];
+        summary = new long[(free.length + 63) >>> 6];
+        for (int f = 0; f < frameCount; f++) {
+            release(f);
+        }
+    }
+
+    public int frameCount() {
+        return frameCount;
+    }
+
+    // Number of frames not in use
+    public int freeCount() {
+        return freeCount;
+    }
+
+    public boolean isFree(int frame) {
+        return frame >= 0 && frame < frameCount && (free[frame >>> 6] & (1L << frame)) != 0;
+    }
+
+    // Marks a free frame as used and returns it, or -1 if every frame is in use
+    public int allocate() {
+        if (freeCount == 0) {
+            return -1;
+        }
+        int word = nextFreeWord(cursor);
+        if (word < 0) {
+            word = nextFreeWord(0);
+        }
+        int frame = (word << 6) + Long.numberOfTrailingZeros(free[word]);
+        take(frame);
+        cursor = word;
+        return frame;
+    }
+
+    // Marks count consecutive free frames as used and returns the first one, or -1 if there is no such run.
+    // First fit from frame 0, skipping whole words that are in use.
+    public int allocateRun(int count) {
+        if (count <= 0) {
+            throw new IllegalArgumentException("Run length must be positive");
+        }
+        if (count == 1) {
+            return allocate();
+        }
+        if (count > freeCount) {
+            return -1;
+        }
+        int runStart = -1;
+        int runLength = 0;
+        int word = nextFreeWord(0);
+        int frame = word < 0 ? frameCount : word << 6;
+        while (frame < frameCount) {
+            if (runLength == 0 && (frame & 63) == 0 && free[frame >>> 6] == 0) {
+                // Nothing free in this word, jump to the next word with a free frame
+                word = nextFreeWord((frame >>> 6) + 1);
+                if (word < 0) {
+                    break;
+                }
+                frame = word << 6;
+                continue;
+            }
+            if (isFree(frame)) {
+                if (runLength == 0) {
+                    runStart = frame;
+                }
+                if (++runLength == count) {
+                    for (int f = runStart; f < runStart + count; f++) {
+                        take(f);
+                    }
+                    return runStart;
+                }
+            } else {
+                runLength = 0;
+            }
+            frame++;
+        }
+        return -1;
+    }
+
+    // Marks a frame as free again. Returns false if it was already free or is not a frame.
+    public boolean release(int frame) {
+        if (frame < 0 || frame >= frameCount || isFree(frame)) {
+            return false;
+        }
+        int word = frame >>> 6;
+        free[word] |= 1L << frame;
+        summary[word >>> 6] |= 1L << word;
+        freeCount++;
+        return true;
+    }
+
+    // Adds free frames so there are newFrameCount in all. Never removes frames.
+    public void grow(int newFrameCount) {
+        if (newFrameCount <= frameCount) {
+            return;
+        }
+        free = Arrays.copyOf(free, (newFrameCount + 63) >>> 6);
+        summary = Arrays.copyOf(summary, (free.length + 63) >>> 6);
+        int oldFrameCount = frameCount;
+        frameCount = newFrameCount;
+        for (int f = oldFrameCount; f < newFrameCount; f++) {
+            release(f);
+        }
+    }
+
+    // Highest numbered frame in use, or -1 if all frames are free
+    public int highestUsed() {
+        for (int word = free.length - 1; word >= 0; word--) {
+            // Bits past the last frame are never set in free[], so mask them out of the used bits
+            long valid = (word == free.length - 1 && (frameCount & 63) != 0) ? (1L << frameCount) - 1 : -1L;
+            long used = ~free[word] & valid;
+            if (used != 0) {
+                return (word << 6) + 63 - Long.numberOfLeadingZeros(used);
+            }
+        }
+        return -1;
+    }
+
+    // Marks a free frame as used
+    private void take(int frame) {
+        int word = frame >>> 6;
+        free[word] &= ~(1L << frame);
+        if (free[word] == 0) {
+            summary[word >>> 6] &= ~(1L << word);
+        }
+        freeCount--;
+    }
+
+    // Index of the first word at or after from that has a free frame, or -1 if there is none
+    private int nextFreeWord(int from) {
+        if (from >= free.length) {
+            return -1;
+        }
+        int s = from >>> 6;
+        // Ignore the words before from in the first summary word
+        long bits = summary[s] & (-1L << from);
+        while (bits == 0) {
+            if (++s == summary.length) {
+                return -1;
+            }
+            bits = summary[s];
+        }
+        return (s << 6) + Long.numberOfTrailingZeros(bits);
+    }
+}
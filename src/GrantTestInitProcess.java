@@ -0,0 +1,22 @@
+public class GrantTestInitProcess extends UserlandProcess {
+    @Override
+    public void main() throws InterruptedException {
+        System.out.println("\nGrantTestInitProcess: Starting page grant test.");
+
+        // The receiver forwards what it gets to the forward target, so those two are created first
+        System.out.println("GrantTestInitProcess: Creating forward target.");
+        int forwardPid = OS.CreateProcess(new GrantTestProcess(GrantTestProcess.FORWARD_TARGET, -1), OS.PriorityType.interactive);
+        cooperate();
+
+        System.out.println("GrantTestInitProcess: Creating receiver.");
+        int receiverPid = OS.CreateProcess(new GrantTestProcess(GrantTestProcess.RECEIVER, forwardPid), OS.PriorityType.interactive);
+        cooperate();
+
+        System.out.println("GrantTestInitProcess: Creating sender.");
+        OS.CreateProcess(new GrantTestProcess(GrantTestProcess.SENDER, receiverPid), OS.PriorityType.interactive);
+        cooperate();
+
+        System.out.println("GrantTestInitProcess: Test processes created. Exiting.");
+        OS.Exit();
+    }
+}
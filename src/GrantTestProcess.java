@@ -0,0 +1,73 @@
+/**
+ * GrantTestProcess tests sending memory with a message (OS.SendMessage(km, pointer, size)).
+ * The sender fills a few pages and sends them to the receiver, which checks their contents at the granted address
+ * and then forwards the message with a plain OS.SendMessage. The forward target checks that the forwarded copy does
+ * not carry the grant, since its pages were never moved into the forward target.
+ */
+public class GrantTestProcess extends UserlandProcess {
+
+    public static final char SENDER = 'S';
+    public static final char RECEIVER = 'R';
+    public static final char FORWARD_TARGET = 'F';
+
+    private static final int PAGE_SIZE = 1024;
+    private static final int GRANT_SIZE = 4 * PAGE_SIZE;
+
+    // Process the messages go to, -1 for the forward target
+    private final int peerPid;
+
+    public GrantTestProcess(char role, int peerPid) {
+        super(role);
+        this.peerPid = peerPid;
+    }
+
+    @Override
+    public void main() throws InterruptedException {
+        switch (role) {
+            case SENDER -> send();
+            case RECEIVER -> receiveAndForward();
+            case FORWARD_TARGET -> receiveForwarded();
+        }
+        OS.Exit();
+    }
+
+    // Fills the pages with a pattern and moves them to the receiver
+    private void send() throws InterruptedException {
+        int pointer = OS.AllocateMemory(GRANT_SIZE);
+        if (pointer == -1) {
+            System.err.println("GrantTestProcess [S]: FAILED allocation.");
+            return;
+        }
+        for (int i = 0; i < GRANT_SIZE; i++) {
+            Hardware.Write(pointer + i, pattern(i));
+        }
+        KernelMessage km = new KernelMessage(OS.GetPID(), peerPid, 1, "pages".getBytes());
+        check(OS.SendMessage(km, pointer, GRANT_SIZE), "sending " + GRANT_SIZE + " bytes of pages");
+        // The pages now belong to the receiver, sending them again has nothing to move
+        check(!OS.SendMessage(km, pointer, GRANT_SIZE), "refusing to send pages that were already sent");
+    }
+
+    // Checks the granted pages, then forwards the message without pages
+    private void receiveAndForward() throws InterruptedException {
+        KernelMessage km = OS.WaitForMessage();
+        int address = km.getGrantAddress();
+        boolean ok = address != -1 && km.getGrantSize() == GRANT_SIZE;
+        for (int i = 0; ok && i < GRANT_SIZE; i++) {
+            ok = Hardware.Read(address + i) == pattern(i);
+        }
+        check(ok, "reading granted pages at " + address);
+        km.setReceiverPid(peerPid);
+        OS.SendMessage(km);
+        OS.FreeMemory(address, km.getGrantSize());
+    }
+
+    // Checks that a forwarded message carries no grant
+    private void receiveForwarded() throws InterruptedException {
+        KernelMessage km = OS.WaitForMessage();
+        check(km.getGrantAddress() == -1, "forwarded message carries no pages");
+    }
+
+    private static byte pattern(int i) {
+        return (byte) (i * 7 + i / PAGE_SIZE);
+    }
+}
@@ -1,16 +1,56 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Objects;
+
 public class Hardware {
-    public static byte[] PhysicalMemory = new byte[1024 * 1024]; // Physical Memory
-    public static int[][] TLB = new int[2][2]; // TLB cache TLB[i][0] → Virtual page number, TLB[i][1] → Physical page number
+    // Physical Memory, 1 MB on the heap unless another backend is set with configureMemory
+    public static PhysicalMemory memory = new HeapMemory(1024 * 1024);
+    // Shape of each CPU's TLB, 16 sets of 4 ways (64 entries) unless changed with configureTLB
+    private static int tlbSets = 16;
+    private static int tlbWays = 4;
+    // One TLB per CPU, indexed by CPU id
+    public static TLB[] TLB;
     private static final int pageSize = 1024; // 1 KB Pages
     public static final int INVALID_PAGE = -1; // Define an invalid page number
 
     // Runs when class is loaded, initializes TLB to invalid.
     static {
+        configureCpus(1);
+    }
+
+    // Sets the number of sets and ways of every CPU's TLB. Takes effect when the CPUs are configured,
+    // so it must be called before OS.Startup.
+    public static void configureTLB(int sets, int ways) {
+        if (sets <= 0 || ways <= 0) {
+            throw new IllegalArgumentException("TLB needs at least one set and one way");
+        }
+        tlbSets = sets;
+        tlbWays = ways;
+    }
+
+    // Replaces the physical memory backend, e.g. with BufferMemory.offHeap or BufferMemory.mapped for large or
+    // file-backed memory. Must be called before OS.Startup; the size must be a whole number of pages.
+    public static void configureMemory(PhysicalMemory backend) {
+        if (backend.size() % pageSize != 0 || backend.size() / pageSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Physical memory must be a whole number of pages, at most " + Integer.MAX_VALUE + " pages");
+        }
+        memory = backend;
+    }
+
+    // Number of physical page frames
+    public static int frameCount() {
+        return (int) (memory.size() / pageSize);
+    }
+
+    // Creates one TLB per simulated CPU, all entries invalid. Called by the kernel before any process runs.
+    public static void configureCpus(int cpuCount) {
         // System.out.println("Hardware: Initializing TLB...");
-        for (int i = 0; i < TLB.length; i++) {
-            TLB[i][0] = INVALID_PAGE; // Invalidate virtual page entry
-            TLB[i][1] = INVALID_PAGE; // Invalidate physical page entry
+        TLB[] tlbs = new TLB[cpuCount];
+        for (int i = 0; i < cpuCount; i++) {
+            tlbs[i] = new TLB(tlbSets, tlbWays);
         }
+        TLB = tlbs;
         // System.out.println("Hardware: TLB Initialized.");
     }
 
@@ -18,8 +58,8 @@ public class Hardware {
     public static byte Read(int virtualAddress) throws InterruptedException {
         int virtualPage = virtualAddress / pageSize;
         int pageOffset = virtualAddress % pageSize;
-        int physicalAddr = getPhysicalAddr(virtualPage, pageOffset); // Get Physical Address from TLB
-        return PhysicalMemory[physicalAddr]; // Returns byte value from memory for the physical address
+        long physicalAddr = getPhysicalAddr(virtualPage, pageOffset, false); // Get Physical Address from TLB
+        return memory.get(physicalAddr); // Returns byte value from memory for the physical address
     }
 
 
@@ -27,34 +67,224 @@ public class Hardware {
     public static void Write(int virtualAddress, byte value) throws InterruptedException {
         int virtualPageNum = virtualAddress / pageSize;
         int pageOffset = virtualAddress % pageSize;
-        int physicalAddr = getPhysicalAddr(virtualPageNum, pageOffset);
-        PhysicalMemory[physicalAddr] = value; // Writes byte value to given memory address
+        long physicalAddr = getPhysicalAddr(virtualPageNum, pageOffset, true);
+        memory.put(physicalAddr, value); // Writes byte value to given memory address
     }
 
-    // Returns physical address of a virtual page
-    private static int getPhysicalAddr(int virtualPageNum, int pageOffset) throws InterruptedException {
-        Integer physicalPageNum = searchTLB(virtualPageNum);
-        if (physicalPageNum == null) {
-            OS.GetMapping(virtualPageNum);
-            physicalPageNum = searchTLB(virtualPageNum);
-            if (physicalPageNum == null) {
-                throw new RuntimeException("Page fault: TLB miss not resolved by OS");
+    // ***** Range operations. Each translates once per page touched and moves the bytes of a page in one block copy. *****
+
+    // Simulate a block LOAD. Copies len bytes starting at virtualAddress into dst[off..off+len).
+    public static void readBytes(int virtualAddress, byte[] dst, int off, int len) throws InterruptedException {
+        Objects.checkFromIndexSize(off, len, dst.length);
+        while (len > 0) {
+            int pageOffset = virtualAddress % pageSize;
+            int chunk = Math.min(len, pageSize - pageOffset);
+            long physicalAddr = getPhysicalAddr(virtualAddress / pageSize, pageOffset, false);
+            memory.read(physicalAddr, dst, off, chunk);
+            virtualAddress += chunk;
+            off += chunk;
+            len -= chunk;
+        }
+    }
+
+    // Simulate a block STORE. Copies src[off..off+len) to memory starting at virtualAddress.
+    public static void writeBytes(int virtualAddress, byte[] src, int off, int len) throws InterruptedException {
+        Objects.checkFromIndexSize(off, len, src.length);
+        while (len > 0) {
+            int pageOffset = virtualAddress % pageSize;
+            int chunk = Math.min(len, pageSize - pageOffset);
+            long physicalAddr = getPhysicalAddr(virtualAddress / pageSize, pageOffset, true);
+            memory.write(physicalAddr, src, off, chunk);
+            virtualAddress += chunk;
+            off += chunk;
+            len -= chunk;
+        }
+    }
+
+    // Sets len bytes starting at virtualAddress to value (memset)
+    public static void fill(int virtualAddress, byte value, int len) throws InterruptedException {
+        while (len > 0) {
+            int pageOffset = virtualAddress % pageSize;
+            int chunk = Math.min(len, pageSize - pageOffset);
+            long physicalAddr = getPhysicalAddr(virtualAddress / pageSize, pageOffset, true);
+            memory.fill(physicalAddr, chunk, value);
+            virtualAddress += chunk;
+            len -= chunk;
+        }
+    }
+
+    // Copies len bytes from srcAddress to dstAddress within the calling process's memory (memmove: the ranges may overlap).
+    // Works in pieces that stay within one source page and one destination page, copying from the end first when the
+    // destination starts inside the source range so no byte is overwritten before it has been copied.
+    public static void copy(int srcAddress, int dstAddress, int len) throws InterruptedException {
+        if (len <= 0 || srcAddress == dstAddress) {
+            return;
+        }
+        if (dstAddress < srcAddress || dstAddress >= srcAddress + len) {
+            while (len > 0) {
+                int chunk = Math.min(len, Math.min(pageSize - srcAddress % pageSize, pageSize - dstAddress % pageSize));
+                copyChunk(srcAddress, dstAddress, chunk);
+                srcAddress += chunk;
+                dstAddress += chunk;
+                len -= chunk;
+            }
+        } else {
+            int srcEnd = srcAddress + len;
+            int dstEnd = dstAddress + len;
+            while (len > 0) {
+                // Bytes left before the end positions, within the page the last byte is on
+                int chunk = Math.min(len, Math.min((srcEnd - 1) % pageSize + 1, (dstEnd - 1) % pageSize + 1));
+                srcEnd -= chunk;
+                dstEnd -= chunk;
+                copyChunk(srcEnd, dstEnd, chunk);
+                len -= chunk;
             }
         }
-        return (physicalPageNum * pageSize) + pageOffset;
+    }
+
+    // ***** Typed loads and stores. Values are little-endian; a value that straddles two pages is assembled from both. *****
+
+    // Views of a byte array as little-endian shorts, ints and longs, for values that straddle pages
+    private static final VarHandle SHORT = MethodHandles.byteArrayViewVarHandle(short[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle INT = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
 
+    public static short readShort(int virtualAddress) throws InterruptedException {
+        if (withinPage(virtualAddress, Short.BYTES)) {
+            return memory.getShort(physicalAddress(virtualAddress, false));
+        }
+        return (short) SHORT.get(readStraddling(virtualAddress, Short.BYTES), 0);
     }
 
+    public static int readInt(int virtualAddress) throws InterruptedException {
+        if (withinPage(virtualAddress, Integer.BYTES)) {
+            return memory.getInt(physicalAddress(virtualAddress, false));
+        }
+        return (int) INT.get(readStraddling(virtualAddress, Integer.BYTES), 0);
+    }
 
-    // Searches TLB cache for virtual page and returns mapped physical page if found, null if not
-    private static Integer searchTLB(int virtualPageNum) {
-        if (virtualPageNum < 0) return null;
-        for (int i = 0; i < TLB.length; i++) {
-            // check if the virtual page number in the TLB is valid and matches
-            if (TLB[i][0] != INVALID_PAGE && TLB[i][0] == virtualPageNum) {
-                return TLB[i][1]; // Return mapped physical page
+    public static long readLong(int virtualAddress) throws InterruptedException {
+        if (withinPage(virtualAddress, Long.BYTES)) {
+            return memory.getLong(physicalAddress(virtualAddress, false));
+        }
+        return (long) LONG.get(readStraddling(virtualAddress, Long.BYTES), 0);
+    }
+
+    public static float readFloat(int virtualAddress) throws InterruptedException {
+        return Float.intBitsToFloat(readInt(virtualAddress));
+    }
+
+    public static double readDouble(int virtualAddress) throws InterruptedException {
+        return Double.longBitsToDouble(readLong(virtualAddress));
+    }
+
+    public static void writeShort(int virtualAddress, short value) throws InterruptedException {
+        if (withinPage(virtualAddress, Short.BYTES)) {
+            memory.putShort(physicalAddress(virtualAddress, true), value);
+        } else {
+            byte[] bytes = new byte[Short.BYTES];
+            SHORT.set(bytes, 0, value);
+            writeBytes(virtualAddress, bytes, 0, bytes.length);
+        }
+    }
+
+    public static void writeInt(int virtualAddress, int value) throws InterruptedException {
+        if (withinPage(virtualAddress, Integer.BYTES)) {
+            memory.putInt(physicalAddress(virtualAddress, true), value);
+        } else {
+            byte[] bytes = new byte[Integer.BYTES];
+            INT.set(bytes, 0, value);
+            writeBytes(virtualAddress, bytes, 0, bytes.length);
+        }
+    }
+
+    public static void writeLong(int virtualAddress, long value) throws InterruptedException {
+        if (withinPage(virtualAddress, Long.BYTES)) {
+            memory.putLong(physicalAddress(virtualAddress, true), value);
+        } else {
+            byte[] bytes = new byte[Long.BYTES];
+            LONG.set(bytes, 0, value);
+            writeBytes(virtualAddress, bytes, 0, bytes.length);
+        }
+    }
+
+    public static void writeFloat(int virtualAddress, float value) throws InterruptedException {
+        writeInt(virtualAddress, Float.floatToRawIntBits(value));
+    }
+
+    public static void writeDouble(int virtualAddress, double value) throws InterruptedException {
+        writeLong(virtualAddress, Double.doubleToRawLongBits(value));
+    }
+
+    // True if a value of the given size at the address does not cross a page boundary
+    private static boolean withinPage(int virtualAddress, int size) {
+        return virtualAddress % pageSize + size <= pageSize;
+    }
+
+    // Translates a virtual address of the calling process to a physical address for a read or a write
+    private static long physicalAddress(int virtualAddress, boolean write) throws InterruptedException {
+        return getPhysicalAddr(virtualAddress / pageSize, virtualAddress % pageSize, write);
+    }
+
+    // Reads the bytes of a value that crosses a page boundary into a buffer of its own
+    private static byte[] readStraddling(int virtualAddress, int size) throws InterruptedException {
+        byte[] bytes = new byte[size];
+        readBytes(virtualAddress, bytes, 0, size);
+        return bytes;
+    }
+
+    // Copies a piece that lies within one source page and one destination page.
+    // When memory is full, the fault that brings in one of the two pages can evict the other, so the destination,
+    // translated first, is looked up again after the source has been translated, and both are translated again if
+    // it has moved.
+    private static void copyChunk(int srcAddress, int dstAddress, int len) throws InterruptedException {
+        int dstPage = dstAddress / pageSize;
+        long srcPhysical;
+        long dstPhysical;
+        do {
+            dstPhysical = getPhysicalAddr(dstPage, dstAddress % pageSize, true);
+            srcPhysical = getPhysicalAddr(srcAddress / pageSize, srcAddress % pageSize, false);
+        } while (!stillMapped(dstPage, dstPhysical));
+        memory.copy(srcPhysical, dstPhysical, len);
+    }
+
+    // True if the TLB still maps the virtual page to the frame holding physicalAddress, without faulting
+    private static boolean stillMapped(int virtualPageNum, long physicalAddress) {
+        VirtualToPhysicalMapping mapping = searchTLB(virtualPageNum);
+        return mapping != null && mapping.physicalPageNumber == physicalAddress / pageSize;
+    }
+
+    // Returns physical address of a virtual page. Like an MMU, sets the page's referenced bit and, for a write,
+    // its dirty bit. A write to a page mapped read only to the shared zero page faults like a miss (copy on write).
+    private static long getPhysicalAddr(int virtualPageNum, int pageOffset, boolean write) throws InterruptedException {
+        VirtualToPhysicalMapping mapping = searchTLB(virtualPageNum);
+        int physicalPageNum = mapping == null ? INVALID_PAGE : mapping.physicalPageNumber;
+        if (physicalPageNum == INVALID_PAGE || (write && mapping.copyOnWrite)) {
+            OS.GetMapping(virtualPageNum, write);
+            mapping = searchTLB(virtualPageNum);
+            physicalPageNum = mapping == null ? INVALID_PAGE : mapping.physicalPageNumber;
+            if (physicalPageNum == INVALID_PAGE || (write && mapping.copyOnWrite)) {
+                throw new RuntimeException("Page fault: TLB miss not resolved by OS");
             }
         }
-        return null;
+        // Only store when a bit changes, so repeated accesses to a page do not keep writing to its page table entry
+        if (!mapping.referenced) {
+            mapping.referenced = true;
+        }
+        if (write && !mapping.dirty) {
+            mapping.dirty = true;
+        }
+        return ((long) physicalPageNum * pageSize) + pageOffset;
+
+    }
+
+
+    // Searches the TLB of the calling process's CPU for its virtual page and returns the cached page table entry if
+    // found, null if not. An entry whose page has just been swapped out has physical page INVALID_PAGE.
+    private static VirtualToPhysicalMapping searchTLB(int virtualPageNum) {
+        if (virtualPageNum < 0) return null;
+        Process current = Process.current();
+        if (current == null) return null; // only processes have an address space
+        return TLB[current.cpu].lookup(current.asid, virtualPageNum);
     }
 }
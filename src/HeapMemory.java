@@ -0,0 +1,81 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+// Physical memory kept in a byte array on the Java heap. The default backend, limited to 2 GB.
+
+public class HeapMemory implements PhysicalMemory {
+
+    // Views of the array as little-endian shorts, ints and longs at any byte offset
+    private static final VarHandle SHORT = MethodHandles.byteArrayViewVarHandle(short[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle INT = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final byte[] bytes;
+
+    public HeapMemory(int size) {
+        bytes = new byte[size];
+    }
+
+    public long size() {
+        return bytes.length;
+    }
+
+    public byte get(long address) {
+        return bytes[(int) address];
+    }
+
+    public void put(long address, byte value) {
+        bytes[(int) address] = value;
+    }
+
+    public short getShort(long address) {
+        return (short) SHORT.get(bytes, (int) address);
+    }
+
+    public void putShort(long address, short value) {
+        SHORT.set(bytes, (int) address, value);
+    }
+
+    public int getInt(long address) {
+        return (int) INT.get(bytes, (int) address);
+    }
+
+    public void putInt(long address, int value) {
+        INT.set(bytes, (int) address, value);
+    }
+
+    public long getLong(long address) {
+        return (long) LONG.get(bytes, (int) address);
+    }
+
+    public void putLong(long address, long value) {
+        LONG.set(bytes, (int) address, value);
+    }
+
+    public void read(long address, byte[] dst, int off, int len) {
+        System.arraycopy(bytes, (int) address, dst, off, len);
+    }
+
+    public void write(long address, byte[] src, int off, int len) {
+        System.arraycopy(src, off, bytes, (int) address, len);
+    }
+
+    public void read(long address, ByteBuffer dst, int index, int len) {
+        dst.put(index, bytes, (int) address, len);
+    }
+
+    public void write(long address, ByteBuffer src, int index, int len) {
+        src.get(index, bytes, (int) address, len);
+    }
+
+    public void fill(long address, int len, byte value) {
+        Arrays.fill(bytes, (int) address, (int) address + len, value);
+    }
+
+    public void copy(long from, long to, int len) {
+        System.arraycopy(bytes, (int) from, bytes, (int) to, len);
+    }
+}
@@ -1,171 +1,330 @@
+import java.io.IOException;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 public class Kernel extends Process implements Device {
 
     // The scheduler manages process switching and scheduling.
-    private final Scheduler scheduler = new Scheduler();
+    private final Scheduler scheduler;
     // The VFS (Virtual File System) handles device operations (e.g., file I/O) and routing of device calls.
     private final VFS vfs = new VFS();
 
     public HashMap<Integer, PCB> waitingForMessage = new HashMap<>();
 
-    public boolean[] freeSpace = new boolean[1024]; // array of booleans to track which pages are in use.
+    // Open message channels by id and by name (see Channel)
+    private final HashMap<Integer, Channel> channels = new HashMap<>();
+    private final HashMap<String, Channel> channelsByName = new HashMap<>();
+    private int nextChannelId = 0;
+
+    private final FrameAllocator frames; // tracks which physical page frames are in use
+    // Frame table: the process and virtual page each physical frame holds, null owner if the frame is free.
+    // Lets the page replacement clock go from a frame to its page table entry.
+    private final PCB[] frameOwner;
+    private final int[] frameVirtualPage;
+    // Next frame the page replacement clock looks at
+    private int clockHand = 0;
+    // Frame of zeroes shared read only by every page that has been read but never written, see GetMapping.
+    // It has no owner in the frame table, so it is never evicted.
+    private final int zeroFrame;
     private static final int PAGE_SIZE = 1024; // Define page size constant
 
-    // VFS file descriptor for the opened swap file. It is initialized to -1 to indicate the file is not open yet
-    private int swapFileId = -1;
+    // The memory-mapped swap file, null until it is opened
+    private SwapFile swapFile;
 
     /*
-     * Tracks next available page index in the swap file.
-     * Each time a page is swapped out it is written to this disk page number and this counter is incremented.
-     * Swap space is not reused.
+     * Tracks which page slots of the swap file are in use.
+     * A page gets a slot the first time it is written out and keeps it until the page is freed, so a clean page can
+     * be dropped on eviction. Freed slots are reused lowest first, and the file is cut back to the highest slot
+     * still in use whenever slots are freed, so the swap file only holds live pages.
      */
-    private int nextSwapPageNumber = 0;
-
-    private final Random random = new Random();
-
-    // Constructor for Kernel, initializes memory free space to true.
+    private final FrameAllocator swapSlots = new FrameAllocator(0);
+
+    // Compressed pages swapped out to memory instead of the swap file, holding up to a fifth of physical memory.
+    // The swap file only gets the pages that do not compress and the ones the pool has to give up to stay in budget.
+    private final CompressedPool compressedPool = new CompressedPool(Hardware.memory.size() / 5);
+    // A page on its way from the compressed pool to the swap file
+    private final byte[] spillBuffer = new byte[PAGE_SIZE];
+
+    // Swap slots reserved at a time for one process's pages, see allocateSwapSlot
+    private static final int SWAP_CLUSTER = 8;
+    // Most swapped pages brought in ahead of one sequential fault, see readAhead
+    private static final int MAX_READ_AHEAD = 8;
+
+    // Watermarks of the free frame pool, see reclaimFrames
+    private final int lowWatermark;
+    private final int highWatermark;
+    // Set while a Reclaim call is queued, so a burst of faults queues only one
+    private boolean reclaimQueued;
+
+    // Constructor for a single CPU Kernel.
     public Kernel() {
+        this(Scheduler.DEFAULT_CPUS);
+    }
+
+    // Constructor for Kernel with the given number of simulated CPUs, initializes memory free space to true.
+    public Kernel(int cpuCount) {
         // System.out.println("Kernel: Kernel constructor called");
-        // Initialize freeSpace, true means free
-        Arrays.fill(freeSpace, true);
+        scheduler = new Scheduler(cpuCount);
+        Hardware.configureCpus(cpuCount);
+        // Every physical page frame starts out free
+        frames = new FrameAllocator(Hardware.frameCount());
+        frameOwner = new PCB[Hardware.frameCount()];
+        frameVirtualPage = new int[Hardware.frameCount()];
+        zeroFrame = frames.allocate();
+        Hardware.memory.fill((long) zeroFrame * PAGE_SIZE, PAGE_SIZE, (byte) 0);
+        lowWatermark = Math.max(4, Hardware.frameCount() / 64);
+        highWatermark = 2 * lowWatermark;
+    }
+
+    // System calls submitted by userland and not yet handled. Drained by the kernel thread in main().
+    private final ConcurrentLinkedQueue<SystemCall> pendingCalls = new ConcurrentLinkedQueue<>();
+
+    // Queues a system call for the kernel thread. The caller wakes the kernel afterwards.
+    void submit(SystemCall call) {
+        pendingCalls.add(call);
+    }
+
+    // Queues a background reclaim of free frames (see reclaimFrames) when a fault has left fewer than lowWatermark
+    // free. It runs on the kernel thread as a call of its own once the current call is finished, while the faulting
+    // process carries on, so faults only take frames from the free pool.
+    private void requestReclaim() {
+        if (reclaimQueued || swapFile == null || frames.freeCount() >= lowWatermark) {
+            return;
+        }
+        reclaimQueued = true;
+        SystemCall call = new SystemCall();
+        call.reset(OS.CallType.Reclaim);
+        submit(call);
+    }
+
+    // Called from the scheduler's timer thread when a sleeping process is due.
+    // Queues a wakeup for the kernel thread, which owns the scheduler state, and wakes the kernel.
+    void requestTimerWakeup() {
+        SystemCall call = new SystemCall();
+        call.reset(OS.CallType.TimerWakeup);
+        submit(call);
+        resumeProcess();
     }
 
     // The main method for the kernel.
-    // It continuously processes system calls submitted via OS.currentCall,
+    // It continuously drains the system calls submitted via submit(),
     // simulating a soft interrupt mechanism where userland calls are handled in privileged mode.
     @Override
     public void main() throws InterruptedException {
         // System.out.println("Kernel.main: Kernel main loop started");
         while (true) {
-            // Check if there is a pending system call from the OS.
-            if (OS.currentCall != null) {
-                // Process the system call based on its type.
-                switch (OS.currentCall) {
-                    case CreateProcess -> {
-                        // System.out.println("Kernel.main: System call is CreateProcess");
-                        // Delegate process creation to the scheduler and return the new PID.
-                        OS.retVal = CreateProcess((UserlandProcess) OS.parameters.get(0), (OS.PriorityType) OS.parameters.get(1));
-                        System.out.println("Kernel.main: CreateProcess returned PID: " + OS.retVal);
-                    }
-                    case SwitchProcess -> {
-                        // System.out.println("Kernel.main: System call is SwitchProcess");
-                        // Switch to the next process using the scheduler.
-                        SwitchProcess();
-                        OS.retVal = 1;
-                    }
-                    case Sleep -> {
-                        // System.out.println("Kernel.main: System call is Sleep");
-                        // Pause the current process for a specified duration.
-                        Sleep((int) OS.parameters.get(0));
-                        OS.retVal = 1;
-                    }
-                    case GetPID -> {
-                        // System.out.println("Kernel.main: System call is GetPID");
-                        // Retrieve the PID of the currently running process.
-                        OS.retVal = GetPid();
-                    }
-                    case Exit -> {
-                        // System.out.println("Kernel.main: System call is Exit");
-                        // Handle process exit: mark the process as done, remove it from the scheduler, and switch.
-                        Exit();
-                        OS.retVal = 1;
-                    }
-                    // Device system calls:
-                    case Open -> {
-                        // System.out.println("Kernel.main: System call is Open");
-                        // Open a device (e.g., file or random device) using the VFS.
-                        OS.retVal = open((String) OS.parameters.get(0));
-                    }
-                    case Close -> {
-                        // System.out.println("Kernel.main: System call is Close");
-                        // Close a device and free its slot in the current process.
-                        close((int) OS.parameters.getFirst());
-                        OS.retVal = 1;
-                    }
-                    case Read -> {
-                        // System.out.println("Kernel.main: System call is Read");
-                        // Read data from a device via the VFS.
-                        OS.retVal = read((int) OS.parameters.getFirst(), (int) OS.parameters.get(1));
-                    }
-                    case Seek -> {
-                        // System.out.println("Kernel.main: System call is Seek");
-                        // Change the read/write position for a device.
-                        seek((int) OS.parameters.get(0), (int) OS.parameters.get(1));
-                        OS.retVal = 1;
-                    }
-                    case Write -> {
-                        // System.out.println("Kernel.main: System call is Write");
-                        // Write data to a device and return the number of bytes written.
-                        OS.retVal = write((int) OS.parameters.get(0), (byte[]) OS.parameters.get(1));
+            SystemCall call;
+            while ((call = pendingCalls.poll()) != null) {
+                PCB caller = call.caller;
+                // The call is handled on behalf of the CPU the caller is running on
+                scheduler.setCurrentCpu(caller);
+                CPU callerCpu = scheduler.getCurrentCpu();
+                dispatch(call);
+                // Once the call is processed, hand over control: the caller's CPU runs whatever is scheduled on it
+                // now (the caller stopped itself for the call), and any CPU that was given a new process starts it.
+                for (CPU cpu : scheduler.getCpus()) {
+                    if ((cpu == callerCpu && caller != null) || cpu.needsStart) {
+                        cpu.needsStart = false;
+                        PCB next = cpu.runningProcess;
+                        if (next != null) {
+                            // System.out.println("Kernel: Starting " + next.userlandProcess.getClass().getSimpleName() + " on CPU " + cpu.id);
+                            next.userlandProcess.start();
+                        }
                     }
+                }
+            }
+            this.stop();
+        }
+    }
 
-                    case SendMessage -> {
-                        // System.out.println("Kernel.main: System call is SendMessage");
-                        // OS.parameters.get(0) is expected to be a KernelMessage.
-                        SendMessage((KernelMessage) OS.parameters.getFirst());
-                        OS.retVal = 1;
-                    }
-                    case WaitForMessage -> {
-                        // System.out.println("Kernel.main: System call is WaitForMessage");
-                        var retVal = WaitForMessage();
-                        if (retVal != null)
-                            OS.retVal = retVal;
-                    }
-                    case GetPIDByName -> {
-                        // System.out.println("Kernel.main: System call is GetPIDByName");
-                        // OS.parameters.get(0) is expected to be a String with the process name.
-                        OS.retVal = GetPidByName((String) OS.parameters.getFirst());
-                    }
-                    case GetMapping -> {
-                        // System.out.println("Kernel.main: System call is GetMapping");
-                        // OS.parameters.get(0) is expected to be a virtual page number
-                        GetMapping((Integer) OS.parameters.getFirst());
-                        OS.retVal = 1;
-                    }
-                    case AllocateMemory -> {
-                        // System.out.println("Kernel.main: System call is AllocateMemory");
-                        OS.retVal = AllocateMemory((Integer) OS.parameters.getFirst());
-                    }
-                    case FreeMemory -> {
-                        // System.out.println("Kernel.main: System call is FreeMemory");
-                        OS.retVal = FreeMemory((int) OS.parameters.get(0), (int) OS.parameters.get(1));
-                    }
+    // Processes a single system call based on its type and completes it with its result.
+    private void dispatch(SystemCall call) throws InterruptedException {
+        switch (call.type) {
+            case CreateProcess -> {
+                // System.out.println("Kernel.main: System call is CreateProcess");
+                // Delegate process creation to the scheduler and return the new PID.
+                int pid = CreateProcess((UserlandProcess) call.ref, call.priority);
+                System.out.println("Kernel.main: CreateProcess returned PID: " + pid);
+                call.complete(pid);
+            }
+            case SwitchProcess -> {
+                // System.out.println("Kernel.main: System call is SwitchProcess");
+                // Switch to the next process using the scheduler.
+                SwitchProcess();
+                call.complete(1);
+            }
+            case Sleep -> {
+                // System.out.println("Kernel.main: System call is Sleep");
+                // Pause the current process for a specified duration.
+                Sleep(call.arg0);
+                call.complete(1);
+            }
+            case GetPID -> {
+                // System.out.println("Kernel.main: System call is GetPID");
+                // Retrieve the PID of the currently running process.
+                call.complete(GetPid());
+            }
+            case Exit -> {
+                // System.out.println("Kernel.main: System call is Exit");
+                // Handle process exit: mark the process as done, remove it from the scheduler, and switch.
+                Exit();
+                call.complete(1);
+            }
+            // Device system calls:
+            case Open -> {
+                // System.out.println("Kernel.main: System call is Open");
+                // Open a device (e.g., file or random device) using the VFS.
+                call.complete(open((String) call.ref));
+            }
+            case Close -> {
+                // System.out.println("Kernel.main: System call is Close");
+                // Close a device and free its slot in the current process.
+                close(call.arg0);
+                call.complete(1);
+            }
+            case Read -> {
+                // System.out.println("Kernel.main: System call is Read");
+                // Read data from a device via the VFS.
+                call.complete(read(call.arg0, call.arg1));
+            }
+            case Seek -> {
+                // System.out.println("Kernel.main: System call is Seek");
+                // Change the read/write position for a device.
+                seek(call.arg0, call.arg1);
+                call.complete(1);
+            }
+            case Write -> {
+                // System.out.println("Kernel.main: System call is Write");
+                // Write data to a device and return the number of bytes written.
+                call.complete(write(call.arg0, (byte[]) call.ref));
+            }
+
+            case SendMessage -> {
+                // System.out.println("Kernel.main: System call is SendMessage");
+                // The sender has already put the message in the mailbox, call.arg0 is the receiver to wake.
+                SendMessage(call.arg0);
+                call.complete(1);
+            }
+            case WaitForMessage -> {
+                // System.out.println("Kernel.main: System call is WaitForMessage");
+                // call.arg0 is the timeout. Without a message the process is parked and the call is completed
+                // when a message is delivered or the timeout passes.
+                WaitForMessage(call);
+            }
+            case Select -> {
+                // call.ref is the int[] of channel ids, call.arg0 the timeout. Completed or parked like WaitForMessage.
+                Select(call);
+            }
+            case SendPages -> {
+                // call.ref is the KernelMessage, call.arg0/arg1 the address and size of the pages to move with it.
+                call.complete(SendPages((KernelMessage) call.ref, call.arg0, call.arg1) ? 1 : 0);
+            }
+            // Channel calls. Send and receive complete the call themselves, or park it if the caller has to block.
+            case OpenChannel -> {
+                // call.ref is the channel name, call.arg0 its capacity
+                call.complete(OpenChannel((String) call.ref, call.arg0));
+            }
+            case CloseChannel -> {
+                call.complete(CloseChannel(call.arg0) ? 1 : 0);
+            }
+            case ChannelSend -> {
+                // call.arg0 is the channel id, call.ref the message, call.arg2 is 1 for a blocking send
+                ChannelSend(call);
+            }
+            case ChannelReceive -> {
+                // call.arg0 is the channel id, call.arg1 the type filter, call.arg2 is 1 for a blocking receive
+                ChannelReceive(call);
+            }
+            case GetPIDByName -> {
+                // System.out.println("Kernel.main: System call is GetPIDByName");
+                // call.ref is expected to be a String with the process name.
+                call.complete(GetPidByName((String) call.ref));
+            }
+            case GetNewestPIDByName -> {
+                // call.ref is expected to be a String with the process name.
+                call.complete(scheduler.getNewestPidByName((String) call.ref));
+            }
+            case GetPIDsByName -> {
+                // call.ref is expected to be a String with the process name. The result is an int[] of pids.
+                call.complete((Object) scheduler.getPidsByName((String) call.ref));
+            }
+            case GetMapping -> {
+                // System.out.println("Kernel.main: System call is GetMapping");
+                // call.arg0 is expected to be a virtual page number, call.arg1 is 1 for a write and 0 for a read
+                GetMapping(call.arg0, call.arg1 != 0);
+                call.complete(1);
+            }
+            case AllocateMemory -> {
+                // System.out.println("Kernel.main: System call is AllocateMemory");
+                call.complete(AllocateMemory(call.arg0));
+            }
+            case FreeMemory -> {
+                // System.out.println("Kernel.main: System call is FreeMemory");
+                call.complete(FreeMemory(call.arg0, call.arg1) ? 1 : 0);
+            }
+            case SubmitBatch -> {
+                // System.out.println("Kernel.main: System call is SubmitBatch");
+                call.complete(SubmitBatch((SyscallRing) call.ref, call.caller));
+            }
+            case TimerWakeup -> {
+                // Move sleepers that are due to the ready queues; idle CPUs are asked to pick them up.
+                scheduler.timerWakeup();
+                call.complete(1);
+            }
+            case Reclaim -> {
+                // Refill the free frame pool, queued by requestReclaim
+                reclaimQueued = false;
+                reclaimFrames();
+                call.complete(1);
+            }
+        }
+    }
+
+    // Processes every entry of a submission ring within this one kernel entry, completing them in order.
+    // Only device and memory calls may be batched; calls that block or switch the caller are rejected with -1.
+    // Stops early if an entry terminates the caller (e.g. a seg fault in GetMapping).
+    // Returns the number of entries completed.
+    private int SubmitBatch(SyscallRing ring, PCB caller) throws InterruptedException {
+        ring.completed = 0;
+        for (int i = 0; i < ring.size(); i++) {
+            SystemCall entry = ring.entry(i);
+            entry.caller = caller;
+            switch (entry.type) {
+                case Open, Close, Read, Seek, Write, GetMapping, AllocateMemory, FreeMemory -> dispatch(entry);
+                default -> {
+                    System.out.println("Kernel.SubmitBatch: " + entry.type + " cannot be batched");
+                    entry.complete(-1);
                 }
             }
-            // Reset the current system call and clear the parameters for the next call.
-            OS.currentCall = null;
-            OS.parameters.clear();
-            // Once the OS call is processed, hand over control:
-            // If a process is scheduled to run, start it.
-            if (scheduler.getCurrentlyRunning() != null) {
-                // System.out.println("Kernel: Starting " + scheduler.getCurrentlyRunning().userlandProcess.getClass().getSimpleName());
-                scheduler.getCurrentlyRunning().userlandProcess.start();
+            ring.completed++;
+            if (caller != null && caller.isDone()) {
+                // The caller was terminated by this entry, the rest of the batch is dropped
+                break;
             }
-            this.stop();
         }
+        return ring.completed;
     }
 
     ////////////////////////////// Memory ///////////////////////////////////////
 
     /*
-     * Open swap file using VFS and FakeFileSystem
-     * Stores the file descriptor ID and is called during OS.Startup.
-     * Uses single VFS/FFS instance
+     * Open swap file as a memory-mapped SwapFile
+     * Is called during OS.Startup.
+     * Pages move directly between physical frames and the mapped file, not through the VFS
      * Requires name for the swap file to be passed in
      * Returns true if the file was opened successfully and false otherwise.
      */
     boolean openSwapFile(String filename) {
-        // Use existing VFS instance
-        // Prefix with "file" for FakeFileSystem as per my implementation
-        swapFileId = vfs.open("file " + filename);
-
-        if (swapFileId < 0) {
-            System.err.println("Kernel.openSwapFile: Could not open swap file " + filename);
+        try {
+            // Whatever a previous run left in the file is not referenced by any page table, it starts empty
+            swapFile = SwapFile.open(Path.of(filename));
+        } catch (IOException | InvalidPathException e) {
+            System.err.println("Kernel.openSwapFile: Could not open swap file " + filename + ": " + e.getMessage());
             return false;
         }
-        System.out.println("Kernel.openSwapFile: Opened swap file " + filename + " with VFS ID " + swapFileId);
-        this.nextSwapPageNumber = 0; // Initialize counter for disk page
+        System.out.println("Kernel.openSwapFile: Opened swap file " + filename);
         return true;
     }
 
@@ -176,14 +335,16 @@ public class Kernel extends Process implements Device {
      * If mapping doesn't exist (null) that is a seg fault
      * If mapping exists and page is valid (!= -1), update TLB and return
      * If mapping exists but physical page is invalid (-1) that is a Page Fault:
-     * Find physical data frame, if no free frame perform page swap to get one
+     * A read of a page that was never written maps the shared zero frame read only (copy on write)
+     * Otherwise, and on the first write to a page mapped to the zero frame,
+     * find physical data frame, if no free frame perform page swap to get one
      * Assign physical frame number to the mapping
      * Load data from swap file or zero fill the physical frame
      * Then update TLB with new mapping
      */
-    private void GetMapping(int virtualPageNum) throws InterruptedException {
+    private void GetMapping(int virtualPageNum, boolean write) throws InterruptedException {
         // Look up the value inside the currently running processes page table and return it
-        PCB currentProcess = scheduler.runningProcess;
+        PCB currentProcess = scheduler.getCurrentlyRunning();
 
         if (currentProcess == null) {
             // Handle error: No running process? Should not happen if called correctly.
@@ -211,19 +372,36 @@ public class Kernel extends Process implements Device {
         }
 
 
+        // First write to a page that shares the zero frame: the page needs a frame of its own, which is zero filled
+        // below like any page that was never written
+        if (write && mapping.copyOnWrite) {
+            System.out.println("Kernel.GetMapping: Copy on write of the zero page for PID " + currentProcess.pid +
+                    " Virtual page " + virtualPageNum);
+            mapping.physicalPageNumber = -1;
+            mapping.copyOnWrite = false;
+        }
+
         // If mapping exists and page is valid (!= -1), can update TLB and return
         if (mapping.physicalPageNumber != -1) {
             System.out.println("Kernel.GetMapping: Page is already in memory for PID " + currentProcess.pid +
                     " Virtual page " + virtualPageNum + " Physical page " + mapping.physicalPageNumber);
-            int randomIndex = (int) (Math.random() * 2); // for 0 or 1
-            Hardware.TLB[randomIndex][0] = virtualPageNum;
-            Hardware.TLB[randomIndex][1] = mapping.physicalPageNumber;
-
-            // System.out.println("Kernel.GetMapping: Updated TLB[" + randomIndex + "]");
+            Hardware.TLB[scheduler.getCurrentCpu().id].insert(currentProcess.pid, virtualPageNum, mapping);
             return;
         }
 
         // If mapping exists and physical page mapping is invalid (-1) that is a page fault
+        // A page that was never written reads as zeroes, so a read maps the shared zero frame instead of taking a frame.
+        // The hardware faults again on the first write to the page (see Hardware.getPhysicalAddr).
+        if (!write && mapping.diskPageNumber == -1 && mapping.compressed == null) {
+            mapping.physicalPageNumber = zeroFrame;
+            mapping.copyOnWrite = true;
+            mapping.referenced = true;
+            System.out.println("Kernel.GetMapping: Mapped the zero page read only to virtual page " + virtualPageNum + " for PID " + currentProcess.pid);
+            readAhead(currentProcess, virtualPageNum);
+            Hardware.TLB[scheduler.getCurrentCpu().id].insert(currentProcess.pid, virtualPageNum, mapping);
+            return;
+        }
+
         // First, attempt to get free physical page
         int freePhysicalPage = findFreePhysicalPage();
 
@@ -242,43 +420,37 @@ public class Kernel extends Process implements Device {
 
         // Assign physical frame to the mapping
         mapping.physicalPageNumber = freePhysicalPage;
+        frameOwner[freePhysicalPage] = currentProcess;
+        frameVirtualPage[freePhysicalPage] = virtualPageNum;
+        // The frame is about to hold the page's swap copy or zeroes, so it starts clean. It counts as referenced so
+        // the clock does not take it straight back before the faulting access.
+        mapping.dirty = false;
+        mapping.referenced = true;
         System.out.println("Kernel.GetMapping: Assigned physical page " + freePhysicalPage + " to virtual page " + virtualPageNum + " for PID " + currentProcess.pid);
 
         // Load data into the frame
-        if (mapping.diskPageNumber != -1) { // This page was previously swapped out
-            // Load from swap file
-            System.out.println("Kernel.GetMapping: Loading virtual page " + virtualPageNum + " from swap slot " +
-                    mapping.diskPageNumber + " into physical page " + freePhysicalPage);
-
-            // Calculate byte offset within the swap file where this page's data starts.
-            // mapping.diskPageNumber is like the page index within the swap file.
-            long diskOffset = (long)mapping.diskPageNumber * PAGE_SIZE;
-
-            // Position vfs's pointer for the swap file to the correct location
-            vfs.seek(swapFileId, (int) diskOffset);
-
-            // Read one page of data from the swap file beginning at the offset
-            byte[] pageData = vfs.read(swapFileId, PAGE_SIZE);
-
-            // Error handling
-            if (pageData == null) {
-                System.err.println("Kernel.GetMapping: ERROR: Failed to read full page from swap file for disk page "
-                        + mapping.diskPageNumber + ". Filling with zeroes instead.");
-                // Rather than crashing return all zeroes for the page data
-                pageData = new byte[PAGE_SIZE]; // This defaults to all zeroes.
-            }
+        if (mapping.compressed != null || mapping.diskPageNumber != -1) { // This page was previously swapped out
+            // Load from the compressed pool or the swap file
+            System.out.println("Kernel.GetMapping: Loading virtual page " + virtualPageNum + " from " +
+                    (mapping.compressed != null ? "the compressed pool" : "swap slot " + mapping.diskPageNumber) +
+                    " into physical page " + freePhysicalPage);
 
             // Calculating start physical address
-            int physicalAddressStart = freePhysicalPage * PAGE_SIZE;
+            long physicalAddressStart = (long) freePhysicalPage * PAGE_SIZE;
 
-            // Copy data from pageData buffer into actual physical memory
+            // Copy the page straight into physical memory
             try {
-                if (physicalAddressStart >= 0 && (physicalAddressStart + PAGE_SIZE) <= Hardware.PhysicalMemory.length) {
-                    System.arraycopy(pageData, 0, Hardware.PhysicalMemory, physicalAddressStart, PAGE_SIZE);
+                if (physicalAddressStart >= 0 && (physicalAddressStart + PAGE_SIZE) <= Hardware.memory.size()) {
+                    if (!swapIn(mapping, physicalAddressStart)) {
+                        System.err.println("Kernel.GetMapping: ERROR: Failed to read full page for virtual page "
+                                + virtualPageNum + ". Filling with zeroes instead.");
+                        // Rather than crashing return all zeroes for the page data
+                        Hardware.memory.fill(physicalAddressStart, PAGE_SIZE, (byte) 0);
+                    }
                 } else {
                     System.err.println("Kernel.GetMapping: ERROR: Invalid physical address " + freePhysicalPage + " during swap in.");
                 }
-            } catch (ArrayIndexOutOfBoundsException e) {
+            } catch (IndexOutOfBoundsException e) {
                 System.err.println("Kernel.GetMapping: ERROR: Array index out of bounds during physical memory copy for swap in Physical page " + freePhysicalPage);
                 e.printStackTrace();
             }
@@ -289,131 +461,303 @@ public class Kernel extends Process implements Device {
             // Must provide a zero filled page back to the process
             System.err.println("Kernel.GetMapping: Zero-filling physical page " + freePhysicalPage +
                     " for virtual page " + virtualPageNum + ". First access or no disk backing.");
-            // Creating a zero-filled buffer
-            byte[] zeroPage = new byte[PAGE_SIZE];
-
             // Calculate starting Physical address
-            int startPhysicalAddress = freePhysicalPage * PAGE_SIZE;
+            long startPhysicalAddress = (long) freePhysicalPage * PAGE_SIZE;
 
-            // Copy zeroes into physical memory frame
+            // Write zeroes into physical memory frame
             try {
-                if (startPhysicalAddress >= 0 && (startPhysicalAddress + PAGE_SIZE) <= Hardware.PhysicalMemory.length) {
-                    System.arraycopy(zeroPage, 0, Hardware.PhysicalMemory, startPhysicalAddress, PAGE_SIZE);
+                if (startPhysicalAddress >= 0 && (startPhysicalAddress + PAGE_SIZE) <= Hardware.memory.size()) {
+                    Hardware.memory.fill(startPhysicalAddress, PAGE_SIZE, (byte) 0);
                 }
-            } catch (ArrayIndexOutOfBoundsException e) {
+            } catch (IndexOutOfBoundsException e) {
                 System.err.println("Kernel.GetMapping: ERROR: Array index out of bounds during physical memory copy for zero fill in Physical page " + freePhysicalPage);
                 e.printStackTrace();
             }
         }
 
+        // Bring in the swapped pages that follow if the process is faulting through its pages in order
+        readAhead(currentProcess, virtualPageNum);
+
+        // Keep a few frames free ahead of the next faults
+        requestReclaim();
+
         // Update TLB with new mapping
         System.out.println("Kernel.GetMapping: Page Fault handled. Updating TLB for virtual page " + virtualPageNum + " to physical page " + freePhysicalPage);
-        int randomIndex = random.nextInt(Hardware.TLB.length);
-        Hardware.TLB[randomIndex][0] = virtualPageNum;
-        Hardware.TLB[randomIndex][1] = freePhysicalPage;
-        System.out.println("Kernel.GetMapping: Updated TLB[" + randomIndex + "]");
+        Hardware.TLB[scheduler.getCurrentCpu().id].insert(currentProcess.pid, virtualPageNum, mapping);
     }
 
-    // Finds index of first available page frame and marks it as used
-    // Returns index of physical page from freeSpace
+    // Takes an available page frame from the allocator and marks it as used
+    // Returns index of physical page or -1 if every frame is in use
     private int findFreePhysicalPage() {
-        for (int p = 0; p < freeSpace.length; p++) {
-            if (freeSpace[p]) {
-                freeSpace[p] = false; // Mark as used
-                // System.out.println("Kernel.findFreePhysicalPage: Found free physical page " + p);
-                return p;
+        int p = frames.allocate();
+        if (p == -1) {
+            System.out.println("Kernel.findFreePhysicalPage: No free physical page found");
+        }
+        return p;
+    }
+
+    // Read-ahead for sequential access. When a process faults on the page right after the last page it faulted on
+    // or had read ahead, the swapped out pages that follow are brought in now, during the same fault; the window
+    // doubles on each sequential fault up to MAX_READ_AHEAD pages and a fault anywhere else resets it.
+    // Pages read ahead only take frames that are already free, never evict, and go straight into the TLB, so the scan
+    // does not fault on them at all.
+    private void readAhead(PCB process, int virtualPageNum) {
+        if (virtualPageNum != process.nextSequentialPage || swapFile == null) {
+            process.readAheadPages = 0;
+            process.nextSequentialPage = virtualPageNum + 1;
+            return;
+        }
+        process.readAheadPages = Math.min(MAX_READ_AHEAD, Math.max(1, process.readAheadPages * 2));
+        int cpu = scheduler.getCurrentCpu().id;
+        int brought = 0;
+        int page = virtualPageNum + 1;
+        for (; page <= virtualPageNum + process.readAheadPages && page < process.pageTable.length; page++) {
+            VirtualToPhysicalMapping mapping = process.pageTable[page];
+            if (mapping == null || (mapping.physicalPageNumber == -1 && mapping.diskPageNumber == -1 && mapping.compressed == null)) {
+                break; // Nothing swapped out to read ahead
+            }
+            if (mapping.physicalPageNumber != -1) {
+                continue; // Already in memory
             }
+            int frame = frames.allocate();
+            if (frame == -1) {
+                break;
+            }
+            mapping.dirty = false;
+            if (!swapIn(mapping, (long) frame * PAGE_SIZE)) {
+                frames.release(frame);
+                break;
+            }
+            mapping.physicalPageNumber = frame;
+            frameOwner[frame] = process;
+            frameVirtualPage[frame] = page;
+            // About to be used by the scan, so the clock passes over it once
+            mapping.referenced = true;
+            Hardware.TLB[cpu].insert(process.pid, page, mapping);
+            brought++;
+        }
+        process.nextSequentialPage = page;
+        if (brought > 0) {
+            System.out.println("Kernel.readAhead: Read " + brought + " pages ahead of virtual page " + virtualPageNum + " for PID " + process.pid);
         }
-        System.out.println("Kernel.findFreePhysicalPage: No free physical page found");
-        return -1;
     }
 
-    // Handles case where no physical page is available, and we need to swap out a page from a random victim process
-    // Writes the victim page to the swap file and updates its page table entry
+    // Copies a swapped out page into the frame at physicalAddress, from the compressed pool if it is there and from
+    // its swap slot otherwise. Returns false if the page could not be read.
+    // A page taken out of the pool is marked dirty: the pool held its only up to date copy.
+    private boolean swapIn(VirtualToPhysicalMapping mapping, long physicalAddress) {
+        if (mapping.compressed != null) {
+            boolean loaded = compressedPool.load(mapping, Hardware.memory, physicalAddress);
+            compressedPool.remove(mapping);
+            mapping.dirty = true;
+            return loaded;
+        }
+        return swapFile.readPage(mapping.diskPageNumber, Hardware.memory, physicalAddress);
+    }
+
+    // Handles case where no physical page is available, and we need to swap out a page to make room.
     // Returns index to the page frame that was freed or -1 if error
     private int performPageSwap() {
         System.out.println("Kernel.performPageSwap: No free physical pages. Starting page swap");
-        if (swapFileId < 0) {
+        if (swapFile == null) {
             System.err.println("Kernel.performPageSwap: ERROR: Swap file not open.");
             return -1;
         }
+        int victimPhysicalPage = evictPage(scheduler.getCurrentlyRunning());
+        if (victimPhysicalPage == -1) {
+            System.err.println("Kernel.performPageSwap: ERROR: No page can be evicted");
+        }
+        return victimPhysicalPage;
+    }
 
-        while (true) {
-            PCB victimProcess = scheduler.getRandomProcess();
+    // Background reclaim, run as a Reclaim call queued by requestReclaim after a fault left fewer than lowWatermark
+    // frames free: evicts pages until highWatermark frames are free, so the next faults find a free frame without
+    // evicting anything themselves. No process waits for it, and pages of running processes are left alone.
+    private void reclaimFrames() {
+        if (swapFile == null) {
+            return;
+        }
+        int reclaimed = 0;
+        while (frames.freeCount() < highWatermark) {
+            int frame = evictPage(null);
+            if (frame == -1) {
+                break; // Every other page is in use right now
+            }
+            if (!frames.release(frame)) {
+                System.err.println("Kernel.reclaimFrames: ERROR: Evicted physical page " + frame + " was already free");
+            }
+            reclaimed++;
+        }
+        System.out.println("Kernel.reclaimFrames: Evicted " + reclaimed + " pages, " + frames.freeCount() + " frames free");
+    }
+
+    // Evicts one page and returns its frame, or -1 if no page can be evicted.
+    // Chooses the victim with the clock (second chance) algorithm: a hand sweeps the physical frames in order,
+    // a frame whose page was referenced since the hand last passed gets its referenced bit cleared and is skipped,
+    // the first frame whose page was not referenced is evicted. Frames of running processes are skipped, they could
+    // be written while being copied out, except those of faultingProcess, which is stopped in its fault (null when
+    // the eviction is a background reclaim).
+    // A dirty victim is compressed into the compressed pool first, or copied to its swap slot if it does not
+    // compress. A dirty page that is all zeroes is dropped like a clean one and zero filled again on its next fault.
+    private int evictPage(PCB faultingProcess) {
+        int frameCount = frameOwner.length;
+        // Two full turns are enough: the first clears every referenced bit it passes
+        for (int scanned = 0; scanned < 2 * frameCount; scanned++) {
+            int victimPhysicalPage = clockHand;
+            clockHand = (clockHand + 1) % frameCount;
+
+            PCB victimProcess = frameOwner[victimPhysicalPage];
             if (victimProcess == null) {
-                System.err.println("Kernel.performPageSwap: ERROR: No process available");
-                return -1;
-            }
-
-            // Find page in victim process that is currently in physical memory
-            VirtualToPhysicalMapping victimMapping = null;
-            int victimVirtualPage = -1;
-            int victimPhysicalPage = -1;
-
-            for (int i = 0; i < victimProcess.pageTable.length; i++) {
-                VirtualToPhysicalMapping mapping = victimProcess.pageTable[i];
-                if (mapping != null && mapping.physicalPageNumber != -1) {
-                    victimMapping = mapping;
-                    victimVirtualPage = i;
-                    victimPhysicalPage = mapping.physicalPageNumber;
-                    // System.out.println("Kernel.performPageSwap: Found victim page: PID " +
-                            // victimProcess.pid + " virtual page: " + victimVirtualPage + " physical page: " + victimPhysicalPage);
-                    break; // Found page to swap
-                }
+                continue; // Frame not owned by a page
             }
-            if (victimMapping == null) {
-                System.out.println("Kernel.performPageSwap: PID " + victimProcess.pid + " had no pages in physical " +
-                        "memory. Trying another victim.");
+            if (victimProcess != faultingProcess && scheduler.isRunning(victimProcess)) {
                 continue;
             }
-
-            // Page is found so proceed with swap
-            // Assign disk location
-            if (victimMapping.diskPageNumber == -1) {
-                victimMapping.diskPageNumber = nextSwapPageNumber++;
-                System.out.println("Kernel.performPageSwap: Assigning swap slot " + victimMapping.diskPageNumber +
-                        " for PID " + victimProcess.pid + " virtual page " + victimVirtualPage);
+            int victimVirtualPage = frameVirtualPage[victimPhysicalPage];
+            VirtualToPhysicalMapping victimMapping = victimProcess.pageTable[victimVirtualPage];
+            if (victimMapping.referenced) {
+                victimMapping.referenced = false; // Second chance
+                continue;
             }
 
-            // Prepare the data buffer
-            byte[] pageData = new byte[PAGE_SIZE];
-            int physicalAddressStart = victimPhysicalPage * PAGE_SIZE;
-            try {
-                // Check bounds before copying
-                if (physicalAddressStart >= 0 && (physicalAddressStart + PAGE_SIZE) <= Hardware.PhysicalMemory.length) {
-                    System.arraycopy(Hardware.PhysicalMemory, physicalAddressStart, pageData, 0, PAGE_SIZE);
-                    // System.out.println("Kernel.performPageSwap: Copied data from physical page " + victimPhysicalPage);
-                } else {
-                    System.err.println("Kernel.performPageSwap ERROR: Invalid physical address calculation for victim P" + victimPhysicalPage);
-                    continue; // Try another victim
+            // Page is found so proceed with swap.
+            // A clean page is dropped without I/O: its frame still matches its swap slot, or holds the zeroes a page
+            // that was never written to swap is filled with again on its next fault.
+            if (victimMapping.dirty) {
+                long physicalAddressStart = (long) victimPhysicalPage * PAGE_SIZE;
+                switch (compressedPool.store(victimProcess, victimMapping, Hardware.memory, physicalAddressStart)) {
+                    case ZERO:
+                        // Its swap slot, if any, is out of date and no longer needed
+                        releaseSwapSlot(victimMapping);
+                        System.out.println("Kernel.evictPage: PID " + victimProcess.pid + " V" + victimVirtualPage +
+                                " is all zeroes, dropping it without storing it");
+                        break;
+                    case STORED:
+                        // The page keeps its swap slot, if it has one, for when it is moved on to the swap file
+                        System.out.println("Kernel.evictPage: Compressed PID " + victimProcess.pid + " V" + victimVirtualPage +
+                                " to " + victimMapping.compressed.length + " bytes, pool holds " + compressedPool.pageCount() +
+                                " pages in " + compressedPool.size() + " bytes");
+                        spillCompressedPages();
+                        break;
+                    case INCOMPRESSIBLE:
+                        if (!writePageToSwap(victimProcess, victimVirtualPage, victimMapping, victimPhysicalPage)) {
+                            continue; // Try another victim
+                        }
+                        break;
                 }
-            } catch (ArrayIndexOutOfBoundsException e) {
-                System.err.println("Kernel.performPageSwap ERROR: Array index out of bounds during physical memory copy for P" + victimPhysicalPage);
-                e.printStackTrace();
-                continue; // Try another victim
-            }
-
-            // Write the data to the swap file
-            long diskOffset = (long)victimMapping.diskPageNumber * PAGE_SIZE;
-            // System.out.println("Kernel.performPageSwap: Seeking swap file to offset " + diskOffset);
-            vfs.seek(swapFileId, (int) diskOffset);
-            int bytesWritten = vfs.write(swapFileId, pageData);
-            if (bytesWritten != PAGE_SIZE) {
-                System.err.println("Kernel.performPageSwap ERROR: Failed to write complete page to swap file. Instead wrote " + bytesWritten);
-                continue; // Find another victim...
+            } else {
+                System.out.println("Kernel.evictPage: PID " + victimProcess.pid + " V" + victimVirtualPage +
+                        " is clean, dropping it without writing to swap");
             }
-            System.out.println("Kernel.performPageSwap: Wrote page data for PID " + victimProcess.pid + " V" + victimVirtualPage + " to swap slot " + victimMapping.diskPageNumber);
 
             // Update victim mapping
             victimMapping.physicalPageNumber = -1;
-            invalidateTLBEntry(victimVirtualPage);
+            frameOwner[victimPhysicalPage] = null;
+            invalidateTLBEntry(victimProcess, victimVirtualPage);
 
             // Return the newly free physical page number
-            System.out.println("Kernel.performPageSwap: Successfully swapped out PID " + victimProcess.pid +
+            System.out.println("Kernel.evictPage: Successfully swapped out PID " + victimProcess.pid +
                     " Virtual page" + victimVirtualPage + " Physical page " + victimPhysicalPage + " is now free.");
             return victimPhysicalPage;
         }
+        return -1;
+    }
+
+    // Copies a resident page's frame to its slot in the mapped swap file, assigning a slot if the page has none yet.
+    // Returns false if the page could not be written.
+    private boolean writePageToSwap(PCB victimProcess, int victimVirtualPage, VirtualToPhysicalMapping victimMapping, int victimPhysicalPage) {
+        // Assign disk location
+        if (victimMapping.diskPageNumber == -1) {
+            victimMapping.diskPageNumber = allocateSwapSlot(victimProcess);
+            System.out.println("Kernel.writePageToSwap: Assigning swap slot " + victimMapping.diskPageNumber +
+                    " for PID " + victimProcess.pid + " virtual page " + victimVirtualPage);
+        }
 
+        long physicalAddressStart = (long) victimPhysicalPage * PAGE_SIZE;
+        try {
+            // Check bounds before copying
+            if (physicalAddressStart < 0 || (physicalAddressStart + PAGE_SIZE) > Hardware.memory.size()) {
+                System.err.println("Kernel.writePageToSwap ERROR: Invalid physical address calculation for victim P" + victimPhysicalPage);
+                return false;
+            }
+            if (!swapFile.writePage(victimMapping.diskPageNumber, Hardware.memory, physicalAddressStart)) {
+                System.err.println("Kernel.writePageToSwap ERROR: Failed to write page to swap slot " + victimMapping.diskPageNumber);
+                return false;
+            }
+        } catch (IndexOutOfBoundsException e) {
+            System.err.println("Kernel.writePageToSwap ERROR: Array index out of bounds during physical memory copy for P" + victimPhysicalPage);
+            e.printStackTrace();
+            return false;
+        }
+        System.out.println("Kernel.writePageToSwap: Wrote page data for PID " + victimProcess.pid + " V" + victimVirtualPage + " to swap slot " + victimMapping.diskPageNumber);
+        return true;
+    }
+
+    // Moves the pages that have been in the compressed pool longest on to the swap file until the pool is back within
+    // its budget. Each page is decompressed and written to its swap slot, assigning one if it has none yet.
+    // A page that cannot be written stays in the pool.
+    private void spillCompressedPages() {
+        while (compressedPool.overBudget()) {
+            Map.Entry<VirtualToPhysicalMapping, PCB> oldest = compressedPool.oldest();
+            VirtualToPhysicalMapping mapping = oldest.getKey();
+            PCB owner = oldest.getValue();
+            if (!compressedPool.load(mapping, spillBuffer)) {
+                System.err.println("Kernel.spillCompressedPages ERROR: Corrupt page in the compressed pool for PID " + owner.pid);
+                return;
+            }
+            if (mapping.diskPageNumber == -1) {
+                mapping.diskPageNumber = allocateSwapSlot(owner);
+            }
+            if (!swapFile.writePage(mapping.diskPageNumber, spillBuffer)) {
+                System.err.println("Kernel.spillCompressedPages ERROR: Failed to write page to swap slot " + mapping.diskPageNumber);
+                return;
+            }
+            compressedPool.remove(mapping);
+            System.out.println("Kernel.spillCompressedPages: Moved a page of PID " + owner.pid + " from the compressed pool to swap slot " + mapping.diskPageNumber);
+        }
+    }
+
+    // Returns a swap slot for a page of the process. Slots come from a cluster of SWAP_CLUSTER consecutive slots
+    // reserved for the process, so the pages it evicts together sit next to each other in the swap file and a
+    // sequential read-ahead reads one stretch of the file. Clusters are taken first fit from the start of the file,
+    // adding slots when no cluster is free.
+    private int allocateSwapSlot(PCB owner) {
+        if (owner.swapClusterNext == owner.swapClusterEnd) {
+            int start;
+            while ((start = swapSlots.allocateRun(SWAP_CLUSTER)) == -1) {
+                swapSlots.grow(Math.max(64, swapSlots.frameCount() * 2));
+            }
+            owner.swapClusterNext = start;
+            owner.swapClusterEnd = start + SWAP_CLUSTER;
+        }
+        return owner.swapClusterNext++;
+    }
+
+    // Gives back the slots of a process's swap cluster that no page has used
+    private void releaseSwapCluster(PCB owner) {
+        while (owner.swapClusterNext < owner.swapClusterEnd) {
+            swapSlots.release(owner.swapClusterNext++);
+        }
+    }
+
+    // Returns the swap slot of a page that is being freed
+    private void releaseSwapSlot(VirtualToPhysicalMapping mapping) {
+        if (mapping.diskPageNumber != -1) {
+            swapSlots.release(mapping.diskPageNumber);
+            mapping.diskPageNumber = -1;
+        }
+    }
+
+    // Cuts the swap file back to the highest slot still in use
+    private void shrinkSwapFile() {
+        if (swapFile == null) {
+            return;
+        }
+        long before = swapFile.length();
+        swapFile.shrink(swapSlots.highestUsed() + 1);
+        if (swapFile.length() < before) {
+            System.out.println("Kernel.shrinkSwapFile: Swap file cut from " + before + " to " + swapFile.length() + " bytes");
+        }
     }
 
     /*
@@ -429,28 +773,14 @@ public class Kernel extends Process implements Device {
             return -1; // Indicate failure
         }
         int numberOfPages = sizeInBytes / PAGE_SIZE;
-        PCB currentProcess = scheduler.runningProcess;
+        PCB currentProcess = scheduler.getCurrentlyRunning();
         if (currentProcess == null) {
             System.err.println("Kernel.AllocateMemory Error: No running process.");
             return -1;
         }
 
         // Find contiguous virtual pages
-        // Search for a contiguous block of 'null' entries in the page table,
-        // 'Null' means unallocated virtual page
-        int startVirtualPage = -1;
-        int consecutiveNullCount = 0;
-        for (int v = 0; v < currentProcess.pageTable.length; v++) {
-            if (currentProcess.pageTable[v] == null) { // Check if virtual page slot is unallocated
-                consecutiveNullCount++;
-                if (consecutiveNullCount == numberOfPages) {
-                    startVirtualPage = v - numberOfPages + 1; // Found enough pages this is start of the block
-                    break;
-                }
-            } else {
-                consecutiveNullCount = 0; // reset count
-            }
-        }
+        int startVirtualPage = findFreeVirtualPages(currentProcess, numberOfPages);
 
         // check if consecutive virtual pages were found
         if (startVirtualPage == -1) {
@@ -477,6 +807,24 @@ public class Kernel extends Process implements Device {
         return startVirtualAddress;
     }
 
+    // Search for a contiguous block of 'null' entries in the page table,
+    // 'Null' means unallocated virtual page
+    // Returns the first virtual page of the block or -1 if there is no such block
+    private int findFreeVirtualPages(PCB process, int numberOfPages) {
+        int consecutiveNullCount = 0;
+        for (int v = 0; v < process.pageTable.length; v++) {
+            if (process.pageTable[v] == null) { // Check if virtual page slot is unallocated
+                consecutiveNullCount++;
+                if (consecutiveNullCount == numberOfPages) {
+                    return v - numberOfPages + 1; // Found enough pages this is start of the block
+                }
+            } else {
+                consecutiveNullCount = 0; // reset count
+            }
+        }
+        return -1;
+    }
+
     // Frees a block of memory beginning at the virtual address pointer.
     // Unmaps the corresponding virtual pages in the process's page table
     // Marks the corresponding physical pages as free.
@@ -495,7 +843,7 @@ public class Kernel extends Process implements Device {
         int startVirtualPage = pointer / PAGE_SIZE; // Calculate start virtual page
         int endVirtualPage = startVirtualPage + numberOfPages - 1; // Calculate last virtual page index
 
-        PCB currentProcess = scheduler.runningProcess;
+        PCB currentProcess = scheduler.getCurrentlyRunning();
         if (currentProcess == null) {
             System.err.println("Kernel.FreeMemory Error: No running process.");
             return false;
@@ -517,12 +865,18 @@ public class Kernel extends Process implements Device {
                 // check to see if the page is in physical memory
                 int physicalPage = mapping.physicalPageNumber;
                 if (physicalPage != -1) {
-                    // Ensure physical page index is valid before using it
-                    if (physicalPage >= 0 && physicalPage < freeSpace.length) {
-                        freeSpace[physicalPage] = true; // Mark physical page as free
+                    if (mapping.copyOnWrite) {
+                        // Only shares the zero frame, which stays in use
+                        invalidateTLBEntry(currentProcess, currentVirtualPage);
+                    } else if (physicalPage >= 0 && physicalPage < frames.frameCount()) { // Ensure physical page index is valid before using it
+                        // Mark physical page as free
+                        if (!frames.release(physicalPage)) {
+                            System.err.println("Kernel.FreeMemory: ERROR: Physical page " + physicalPage + " of virtual page " + currentVirtualPage + " was already free");
+                        }
+                        frameOwner[physicalPage] = null;
                         // System.out.println("Kernel.FreeMemory: Freed physical page " + physicalPage + " for PID " + currentProcess.pid);
                         // Invalidate TLB entry
-                        invalidateTLBEntry(currentVirtualPage);
+                        invalidateTLBEntry(currentProcess, currentVirtualPage);
                     } else {
                         // Page table had an invalid physical page number
                         System.err.println("Kernel.FreeMemory ERROR: Virtual page " + currentVirtualPage + " mapped to invalid physical page " + physicalPage);
@@ -532,6 +886,8 @@ public class Kernel extends Process implements Device {
                     // System.out.println("Kernel.FreeMemory: Virtual page " + currentVirtualPage + " was mapped virtually but was not in physical memory.");
                 }
 
+                compressedPool.remove(mapping);
+                releaseSwapSlot(mapping);
                 // Remove mapping from page table. Virtual page will no longer be allocated to the process
                 currentProcess.pageTable[currentVirtualPage] = null;
             } else {
@@ -541,23 +897,21 @@ public class Kernel extends Process implements Device {
                 currentProcess.pageTable[currentVirtualPage] = null;
             }
         }
+        shrinkSwapFile();
         System.out.println("Kernel.FreeMemory: Completed freeing request for PID " + currentProcess.pid);
         return true;
     }
 
-    // Helper method to invalidate TLB entry for the given virtual page
-    private void invalidateTLBEntry(int virtualPageNum) {
-        for (int j = 0; j < Hardware.TLB.length; j++) {
-            if (Hardware.TLB[j][0] == virtualPageNum) {
-                Hardware.TLB[j][0] = Hardware.INVALID_PAGE; // invalidate the entry for the current virtual page
-                Hardware.TLB[j][1] = Hardware.INVALID_PAGE; // physical page
-                // System.out.println("Kernel: Invalidated TLB entry for virtual page " + virtualPageNum);
-            }
+    // Helper method to invalidate TLB entry for the given virtual page of a process.
+    // TLB entries are tagged with the owner's pid and survive task switches, so every CPU the owner has run on may
+    // still cache the page. Entries of other processes for the same virtual page are left alone.
+    private void invalidateTLBEntry(PCB owner, int virtualPageNum) {
+        for (TLB tlb : Hardware.TLB) {
+            tlb.invalidate(owner.pid, virtualPageNum);
         }
-
     }
 
-    // Free all memory associated with a process. Clearing TLB also happens in Scheduler.switchProcess()
+    // Free all memory associated with a process.
     private void FreeAllMemory(PCB currentlyRunning) {
         System.out.println("Kernel.FreeAllMemory: Freeing all memory for PID " + currentlyRunning.pid);
         // Marks all page table entries as free. Marks all physical pages as not in use.
@@ -567,35 +921,38 @@ public class Kernel extends Process implements Device {
             if (mapping != null) {
                 int physicalPage = mapping.physicalPageNumber;
                 if (physicalPage != -1) {
-                    if (physicalPage >= 0 && physicalPage < freeSpace.length) {
-                        if (!freeSpace[physicalPage]) {
-                            freeSpace[physicalPage] = true; // Mark physical page as free
+                    if (mapping.copyOnWrite) {
+                        // Only shares the zero frame, which stays in use
+                    } else if (physicalPage >= 0 && physicalPage < frames.frameCount()) {
+                        // Mark physical page as free
+                        if (!frames.release(physicalPage)) {
+                            System.err.println("Kernel.FreeAllMemory: ERROR: Physical page " + physicalPage + " of virtual page " + i + " for PID " + currentlyRunning.pid + " was already free");
                         }
+                        frameOwner[physicalPage] = null;
                     } else {
                         // Physical page number was invalid
                         System.out.println("Kernel.FreeAllMemory: WARNING: Invalid physical page: " + physicalPage + " for PID " + currentlyRunning + " for virtual page " + i);
                     }
-                    // Invalidate TLB
-                    invalidateTLBEntry(i);
                 }
+                compressedPool.remove(mapping);
+                releaseSwapSlot(mapping);
                 // Remove mapping
                 currentlyRunning.pageTable[i] = null;
             }
         }
+        // Flush the whole address space from every CPU's TLB, so no entry outlives the process and its ASID could be
+        // given to another process
+        for (TLB tlb : Hardware.TLB) {
+            tlb.invalidateAll(currentlyRunning.pid);
+        }
+        releaseSwapCluster(currentlyRunning);
+        shrinkSwapFile();
         System.out.println("Kernel.FreeAllMemory: Finished freeing memory for PID " + currentlyRunning.pid);
     }
 
-    // Copies the provided KernelMessage, sets the sender Pid, and delivers it to the target process
-    private void SendMessage(KernelMessage km) {
-        // Set sender pid
-        int senderPid = GetPid();
-        km.setSenderPid(senderPid);
-
-        // Create copy of message so recipient gets its own instance (shared memory would allow overwriting)
-        KernelMessage messageCopy = new KernelMessage(km);
-
-        // Get target pid from the message and locate receiver pcb
-        int targetPid = messageCopy.getReceiverPid();
+    // Wakes the target process after a sender has put a message in its mailbox (see OS.SendMessage).
+    // Senders only enter the kernel when they saw the receiver blocked, the message itself never passes through here.
+    private void SendMessage(int targetPid) {
         PCB receiver = scheduler.getPCB(targetPid);
 
         if (receiver == null) {
@@ -603,42 +960,336 @@ public class Kernel extends Process implements Device {
             return;
         }
 
-        // Add message copy to receivers message queue
+        // If receiver is waiting for a message, remove it from the waiting map and requeue into runnable queue.
+        // Several senders may race to wake the same receiver, only the first one finds it waiting.
+        if (waitingForMessage.containsKey(targetPid) && !receiver.messageQueue.isEmpty()) {
+            endWait(receiver, false);
+            System.out.println("SendMessage: Woke up process with pid " + targetPid);
+        }
+
+    }
+
+    /*
+     * Sends a message together with a block of the sender's pages without copying their contents.
+     * The page table entries themselves are moved to a free range of the receiver's page table, so a page keeps its
+     * physical frame or swap slot and the bytes never move. The sender's entries are removed and its TLB entries
+     * invalidated, so each page is owned by exactly one process at any time and swapping and freeing work unchanged.
+     * Returns false without moving anything if the range or the receiver is invalid.
+     */
+    private boolean SendPages(KernelMessage km, int pointer, int sizeInBytes) {
+        PCB sender = scheduler.getCurrentlyRunning();
+        if (sender == null) {
+            System.err.println("Kernel.SendPages Error: No running process.");
+            return false;
+        }
+        if (sizeInBytes <= 0 || sizeInBytes % PAGE_SIZE != 0 || pointer < 0 || pointer % PAGE_SIZE != 0) {
+            System.err.println("Kernel.SendPages Error: Invalid range " + pointer + " size " + sizeInBytes + ". Must be page aligned.");
+            return false;
+        }
+        int numberOfPages = sizeInBytes / PAGE_SIZE;
+        int startVirtualPage = pointer / PAGE_SIZE;
+        if (startVirtualPage + numberOfPages > sender.pageTable.length) {
+            System.err.println("Kernel.SendPages Error: Virtual page range out of bounds for PID " + sender.pid);
+            return false;
+        }
+        for (int i = startVirtualPage; i < startVirtualPage + numberOfPages; i++) {
+            if (sender.pageTable[i] == null) {
+                System.err.println("Kernel.SendPages Error: Virtual page " + i + " is not allocated for PID " + sender.pid);
+                return false;
+            }
+        }
+
+        PCB receiver = scheduler.getPCB(km.getReceiverPid());
+        if (receiver == null || receiver.isDone()) {
+            System.out.println("Kernel.SendPages: Recipient with pid " + km.getReceiverPid() + " not found.");
+            return false;
+        }
+        int receiverStartPage = findFreeVirtualPages(receiver, numberOfPages);
+        if (receiverStartPage == -1) {
+            System.out.println("Kernel.SendPages: Not enough contiguous address space in PID " + receiver.pid + " for " + numberOfPages + " pages.");
+            return false;
+        }
+
+        // Move the mappings. The receiver has no mapping for its new virtual pages, so no TLB can hold a translation
+        // for them; only the sender's translations for the old pages have to be dropped.
+        for (int i = 0; i < numberOfPages; i++) {
+            VirtualToPhysicalMapping mapping = sender.pageTable[startVirtualPage + i];
+            receiver.pageTable[receiverStartPage + i] = mapping;
+            sender.pageTable[startVirtualPage + i] = null;
+            invalidateTLBEntry(sender, startVirtualPage + i);
+            if (mapping.physicalPageNumber != -1 && !mapping.copyOnWrite) {
+                frameOwner[mapping.physicalPageNumber] = receiver;
+                frameVirtualPage[mapping.physicalPageNumber] = receiverStartPage + i;
+            }
+            compressedPool.changeOwner(mapping, receiver);
+        }
+        System.out.println("Kernel.SendPages: Moved " + numberOfPages + " pages from PID " + sender.pid + " V" + startVirtualPage
+                + " to PID " + receiver.pid + " V" + receiverStartPage);
+
+        km.setSenderPid(sender.pid);
+        KernelMessage messageCopy = new KernelMessage(km);
+        messageCopy.setGrant(receiverStartPage * PAGE_SIZE, sizeInBytes);
         receiver.messageQueue.add(messageCopy);
-        // System.out.println("Kernel.SendMessage: Message sent from pid " + senderPid + " to pid " + targetPid);
+        SendMessage(receiver.pid);
+        return true;
+    }
 
-        // If receiver is waiting for a message, remove it from the waiting map and requeue into runnable queue
-        if (waitingForMessage.containsKey(targetPid)) {
-            PCB waitingProcess = waitingForMessage.remove(targetPid);
-            scheduler.wakeUpProcess(waitingProcess); // re-add process to running queue
-            System.out.println("SendMessage: Woke up process with pid " + targetPid);
+    // Opens the named channel, creating it if needed, and returns its id
+    private int OpenChannel(String name, int capacity) {
+        if (name == null || capacity <= 0) {
+            System.err.println("Kernel.OpenChannel Error: Invalid channel " + name + " with capacity " + capacity);
+            return -1;
+        }
+        Channel channel = channelsByName.get(name);
+        if (channel == null) {
+            channel = new Channel(nextChannelId++, name, capacity);
+            channels.put(channel.id, channel);
+            channelsByName.put(name, channel);
+            System.out.println("Kernel.OpenChannel: Created channel " + name + " with id " + channel.id + " and capacity " + capacity);
+        }
+        channel.openCount++;
+        PCB current = scheduler.getCurrentlyRunning();
+        if (current != null) {
+            current.openChannels.add(channel.id);
+        }
+        return channel.id;
+    }
+
+    // Closes one of the running process's opens of a channel. Returns false if the process does not have the channel
+    // open, so a process cannot close a channel other processes opened.
+    private boolean CloseChannel(int id) {
+        PCB current = scheduler.getCurrentlyRunning();
+        if (current == null || !current.openChannels.remove((Integer) id)) {
+            System.out.println("Kernel.CloseChannel: Channel " + id + " is not open in the calling process");
+            return false;
         }
+        releaseChannel(id);
+        return true;
+    }
+
+    // Drops one open of a channel and destroys it after the last close, failing every call still blocked on it
+    private void releaseChannel(int id) {
+        Channel channel = channels.get(id);
+        if (channel == null) {
+            return;
+        }
+        if (--channel.openCount > 0) {
+            return;
+        }
+        channels.remove(id);
+        channelsByName.remove(channel.name);
+        for (SystemCall sender : channel.blockedSenders) {
+            unblock(sender, 0);
+        }
+        for (SystemCall receiver : channel.blockedReceivers) {
+            unblock(receiver, null);
+        }
+        // A destroyed channel counts as ready, the selecting process finds out when its receive returns null
+        for (PCB selector : new ArrayList<>(channel.selectors)) {
+            endWait(selector, false);
+        }
+        System.out.println("Kernel.releaseChannel: Destroyed channel " + channel.name);
+    }
+
+    // Queues a copy of the message on the channel, hands it straight to a blocked receiver that accepts it,
+    // or parks the sender if the channel is full and the send is blocking.
+    private void ChannelSend(SystemCall call) {
+        Channel channel = channels.get(call.arg0);
+        if (channel == null || call.ref == null) {
+            call.complete(0);
+            return;
+        }
+        PCB sender = scheduler.getCurrentlyRunning();
+        KernelMessage km = (KernelMessage) call.ref;
+        km.setSenderPid(sender != null ? sender.pid : -1);
+        // Copy of message so the receiver gets its own instance
+        KernelMessage messageCopy = new KernelMessage(km);
+
+        if (deliver(channel, messageCopy)) {
+            call.complete(1);
+        } else if (call.arg2 == 0 || call.caller == null) {
+            // Non-blocking send (or a caller that cannot block) on a full channel
+            call.complete(0);
+        } else {
+            // Park the sender with its message until a receiver makes room
+            call.ref = messageCopy;
+            channel.blockedSenders.add(call);
+            scheduler.block();
+        }
+    }
+
+    // Takes the oldest message accepted by the caller's type filter, or parks the receiver if there is none and the
+    // receive is blocking.
+    private void ChannelReceive(SystemCall call) {
+        Channel channel = channels.get(call.arg0);
+        if (channel == null) {
+            call.complete((Object) null);
+            return;
+        }
+        int messageType = call.arg1;
+        KernelMessage km = channel.take(messageType);
+        if (km != null) {
+            // A slot was freed, let blocked senders fill it
+            admitBlockedSenders(channel);
+            call.complete(km);
+            return;
+        }
+        // The buffer may be full of other types while a blocked sender holds a matching message
+        SystemCall sender = channel.takeSenderFor(messageType);
+        if (sender != null) {
+            km = (KernelMessage) sender.ref;
+            unblock(sender, 1);
+            call.complete(km);
+        } else if (call.arg2 == 0 || call.caller == null) {
+            call.complete((Object) null);
+        } else {
+            channel.blockedReceivers.add(call);
+            scheduler.block();
+        }
+    }
+
+    // Hands the message to the first blocked receiver that accepts it, otherwise appends it to the channel's buffer.
+    // Returns false if neither is possible because the buffer is full.
+    private boolean deliver(Channel channel, KernelMessage km) {
+        SystemCall receiver = channel.takeReceiverFor(km);
+        if (receiver != null) {
+            unblock(receiver, km);
+            return true;
+        }
+        if (channel.isFull()) {
+            return false;
+        }
+        channel.add(km);
+        // Processes selecting on the channel can now receive from it
+        for (PCB selector : new ArrayList<>(channel.selectors)) {
+            endWait(selector, false);
+        }
+        return true;
+    }
+
+    // Moves the messages of blocked senders into the channel while there is room, waking each sender
+    private void admitBlockedSenders(Channel channel) {
+        while (!channel.isFull() && !channel.blockedSenders.isEmpty()) {
+            SystemCall sender = channel.blockedSenders.poll();
+            deliver(channel, (KernelMessage) sender.ref);
+            unblock(sender, 1);
+        }
+    }
 
+    // Completes a parked call and makes its process runnable again
+    private void unblock(SystemCall call, int result) {
+        call.complete(result);
+        scheduler.wakeUpProcess(call.caller);
+    }
+
+    private void unblock(SystemCall call, KernelMessage km) {
+        call.complete(km);
+        scheduler.wakeUpProcess(call.caller);
     }
 
     // Checks the running process's running message queue and if it's empty it's marked as waiting and the
-    // scheduler is invoked to switch process
-    private Object WaitForMessage() throws InterruptedException {
+    // scheduler is invoked to switch process. call.arg0 is the timeout: 0 never waits, negative waits forever.
+    private void WaitForMessage(SystemCall call) throws InterruptedException {
         // System.out.println("Kernel.WaitForMessage Entered");
-        PCB current = scheduler.runningProcess;
+        PCB current = scheduler.getCurrentlyRunning();
         if (current == null) throw new InterruptedException();
 
+        // Mark the process as waiting before looking at the mailbox one last time. A sender adds its message first and
+        // then checks the flag, so either this check sees the message or the sender sees the flag and wakes the process.
+        current.waitingForMessage = true;
+        KernelMessage km = current.messageQueue.poll();
+
         // If there is no message then put process into waiting map and switch process. When a message is sent, process
         // will be awoken.
-        if (current.messageQueue.isEmpty()) {
-            // Add current process to the waiting map if it's not already waiting
-            waitingForMessage.put(current.pid, current);
-            current.waitingForMessage = true;
+        if (km == null && call.arg0 != 0) {
             System.out.println("Kernel.WaitForMessage: Process " + current.userlandProcess.getClass().getSimpleName() + " is now waiting for a message.");
-            scheduler.switchProcess();
-            return null;
-
+            beginWait(current, call);
         } else {
-            // If there is a message return it
+            // If there is a message return it (or null if the caller did not want to wait)
             System.out.println("Kernel.WaitForMessage: Process " + current.userlandProcess.getClass().getSimpleName() + " is returning a message.");
             current.waitingForMessage = false;
-            return current.messageQueue.removeFirst();
+            call.complete(km);
+        }
+    }
+
+    // Completes the call with the first ready source (see OS.Select), or blocks the process until a source becomes
+    // ready or the timeout in call.arg0 passes.
+    private void Select(SystemCall call) throws InterruptedException {
+        PCB current = scheduler.getCurrentlyRunning();
+        if (current == null) throw new InterruptedException();
+        int[] channelIds = (int[]) call.ref;
+
+        // Same ordering as WaitForMessage, so a message added to the mailbox meanwhile is not missed
+        current.waitingForMessage = true;
+        int ready = readySource(current, channelIds);
+        if (ready != -1 || call.arg0 == 0) {
+            current.waitingForMessage = false;
+            call.complete(ready);
+            return;
         }
+        for (int id : channelIds) {
+            channels.get(id).selectors.add(current);
+        }
+        beginWait(current, call);
+    }
+
+    // Returns the index of the first channel that has a message queued or no longer exists, channelIds.length if the
+    // process's mailbox has a message, or -1 if no source is ready
+    private int readySource(PCB process, int[] channelIds) {
+        for (int i = 0; i < channelIds.length; i++) {
+            Channel channel = channels.get(channelIds[i]);
+            if (channel == null || !channel.isEmpty()) {
+                return i;
+            }
+        }
+        return process.messageQueue.isEmpty() ? -1 : channelIds.length;
+    }
+
+    // Parks the running process in a WaitForMessage or Select call, with a deadline if the call has a timeout,
+    // and switches to the next process
+    private void beginWait(PCB current, SystemCall call) {
+        // Add current process to the waiting map if it's not already waiting
+        waitingForMessage.put(current.pid, current);
+        // Keep the caller's request so it can be completed when the process is woken
+        current.messageCall = call;
+        // A deadline left behind by an earlier wait must not match this one
+        current.waitDeadline = 0;
+        if (call.arg0 > 0) {
+            scheduler.addTimeout(current, call.arg0);
+        }
+        scheduler.switchProcess();
+    }
+
+    // Ends the WaitForMessage or Select the process is blocked in and makes it runnable again.
+    // A WaitForMessage completes with the next message in the mailbox and a Select with its ready source,
+    // both complete with null / -1 if the wait timed out.
+    private void endWait(PCB process, boolean timedOut) {
+        SystemCall call = process.messageCall;
+        if (call == null) {
+            return; // Already woken, e.g. by an earlier source of the same Select
+        }
+        process.messageCall = null;
+        process.waitingForMessage = false;
+        waitingForMessage.remove(process.pid);
+        if (call.type == OS.CallType.Select) {
+            int[] channelIds = (int[]) call.ref;
+            for (int id : channelIds) {
+                Channel channel = channels.get(id);
+                if (channel != null) {
+                    channel.selectors.remove(process);
+                }
+            }
+            call.complete(timedOut ? -1 : readySource(process, channelIds));
+        } else {
+            call.complete(timedOut ? null : process.messageQueue.poll());
+        }
+        scheduler.wakeUpProcess(process);
+    }
+
+    // Called by the scheduler when the deadline of a blocked WaitForMessage or Select has passed
+    void waitTimedOut(PCB process) {
+        System.out.println("Kernel.waitTimedOut: Wait of PID " + process.pid + " timed out");
+        endWait(process, true);
     }
 
     // Helper method to find a process by its name
@@ -665,14 +1316,23 @@ public class Kernel extends Process implements Device {
         scheduler.sleep(mills);
     }
 
-    // Marks the current process as exited, removes it from the scheduler, frees its memory and switches to the next process.
-    // Clearing TLB happens in Scheduler.switchProcess()
+    // Marks the current process as exited, removes it from the scheduler, closes the devices and channels it still has
+    // open, frees its memory and switches to the next process.
+    // FreeAllMemory drops the process's TLB entries on every CPU
     private void Exit() throws InterruptedException {
-        if (scheduler.runningProcess != null) {
-            PCB exitingProcess = scheduler.runningProcess;
+        if (scheduler.getCurrentlyRunning() != null) {
+            PCB exitingProcess = scheduler.getCurrentlyRunning();
             exitingProcess.exit(); // Mark as exited.
             exitingProcess.messageQueue.clear();
             scheduler.removeProcess(exitingProcess);
+            for (int i = 0; i < exitingProcess.openDevices.length; i++) {
+                forceCloseDevice(exitingProcess, i);
+            }
+            // A channel the process held the last open of is destroyed, which wakes the processes blocked on it
+            for (int id : exitingProcess.openChannels) {
+                releaseChannel(id);
+            }
+            exitingProcess.openChannels.clear();
             FreeAllMemory(exitingProcess);
             scheduler.switchProcess();
         }
@@ -680,7 +1340,7 @@ public class Kernel extends Process implements Device {
 
     // GetPid: Returns the PID of the currently running process.
     private int GetPid() {
-        int pid = (scheduler.runningProcess != null) ? scheduler.runningProcess.pid : -1;
+        int pid = (scheduler.getCurrentlyRunning() != null) ? scheduler.getCurrentlyRunning().pid : -1;
         return pid;
     }
 
@@ -690,7 +1350,7 @@ public class Kernel extends Process implements Device {
     // It finds an available slot in the current process's openDevices array.
     @Override
     public int open(String s) {
-        PCB current = scheduler.runningProcess;
+        PCB current = scheduler.getCurrentlyRunning();
         if (current == null) return -1;
         for (int i = 0; i < current.openDevices.length; i++) {
             if (current.openDevices[i] == -1) {
@@ -707,7 +1367,7 @@ public class Kernel extends Process implements Device {
     // It checks the device id and clears the corresponding entry in the current process's openDevices array.
     @Override
     public void close(int id) {
-        PCB current = scheduler.runningProcess;
+        PCB current = scheduler.getCurrentlyRunning();
         if (current == null || id < 0 || id >= current.openDevices.length) return;
         int vfsId = current.openDevices[id];
         if (vfsId != -1) {
@@ -720,7 +1380,7 @@ public class Kernel extends Process implements Device {
     // Validates the device id and returns the data as a byte array.
     @Override
     public byte[] read(int id, int size) {
-        PCB current = scheduler.runningProcess;
+        PCB current = scheduler.getCurrentlyRunning();
         if (current == null || id < 0 || id >= current.openDevices.length) return new byte[0];
         int vfsId = current.openDevices[id];
         if (vfsId == -1) return new byte[0];
@@ -730,7 +1390,7 @@ public class Kernel extends Process implements Device {
     // seek: Adjusts the read/write position for a device through the VFS.
     @Override
     public void seek(int id, int to) {
-        PCB current = scheduler.runningProcess;
+        PCB current = scheduler.getCurrentlyRunning();
         if (current == null || id < 0 || id >= current.openDevices.length) return;
         int vfsId = current.openDevices[id];
         if (vfsId == -1) return;
@@ -741,7 +1401,7 @@ public class Kernel extends Process implements Device {
     // Returns the number of bytes written.
     @Override
     public int write(int id, byte[] data) {
-        PCB current = scheduler.runningProcess;
+        PCB current = scheduler.getCurrentlyRunning();
         if (current == null || id < 0 || id >= current.openDevices.length) return 0;
         int vfsId = current.openDevices[id];
         if (vfsId == -1) return 0;
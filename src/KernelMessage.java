@@ -3,6 +3,10 @@ public class KernelMessage {
     private int receiverPid;
     private int messageType;
     private byte[] data;
+    // Pages moved from the sender to the receiver with OS.SendMessage(km, pointer, size) instead of copying bytes.
+    // grantAddress is the virtual address of the pages in the receiver, -1 if the message carries no pages.
+    private int grantAddress = -1;
+    private int grantSize;
 
     // Constructor to initialize all fields
     public KernelMessage(int senderPid, int receiverPid, int messageType, byte[] data) {
@@ -20,6 +24,8 @@ public class KernelMessage {
     }
 
     // Copy constructor
+    // The grant is not copied: it names pages that were moved into one receiver, so a forwarded copy of a received
+    // message must not carry it. Kernel.SendPages sets the grant on its own copy.
     public KernelMessage(KernelMessage message) {
         // Can copy primitives directly because they are stored by value
         this.senderPid = message.senderPid;
@@ -74,6 +80,22 @@ public class KernelMessage {
         }
     }
 
+    // Virtual address in the receiver of the pages granted with this message, or -1 if there are none
+    public int getGrantAddress() {
+        return grantAddress;
+    }
+
+    // Size in bytes of the granted pages
+    public int getGrantSize() {
+        return grantSize;
+    }
+
+    // Set by the kernel when it moves the pages into the receiver
+    void setGrant(int grantAddress, int grantSize) {
+        this.grantAddress = grantAddress;
+        this.grantSize = grantSize;
+    }
+
     // toString method for debugging and logging purposes
     // Assumes the data is text
     @Override
@@ -81,7 +103,8 @@ public class KernelMessage {
         // For simplicity, if data is non-null, we convert it to a string.
         // In a real system, you might want to represent binary data differently.
         return "KernelMessage [senderPid=" + senderPid + ", receiverPid=" + receiverPid
-                + ", messageType=" + messageType + ", data=" + (data != null ? new String(data) : "null") + "]";
+                + ", messageType=" + messageType + ", data=" + (data != null ? new String(data) : "null")
+                + (grantAddress != -1 ? ", grant=" + grantSize + " bytes at " + grantAddress : "") + "]";
     }
 
 }
@@ -0,0 +1,63 @@
+import java.util.concurrent.atomic.AtomicReference;
+
+/*
+ * Lock-free multi-producer single-consumer message queue, one per PCB.
+ * Any process may add a message directly from its own thread; only the owning process (or the kernel
+ * on its behalf while it is blocked) takes messages out. Producers link a new node with one atomic swap of
+ * the tail, the consumer walks from a stub head node without any atomic operation.
+ */
+public class Mailbox {
+
+    private static final class Node {
+        KernelMessage message;
+        volatile Node next;
+
+        Node(KernelMessage message) {
+            this.message = message;
+        }
+    }
+
+    // Last node added. Producers swap themselves in here.
+    private final AtomicReference<Node> tail;
+
+    // Stub node in front of the oldest message. Only touched by the consumer.
+    private Node head;
+
+    public Mailbox() {
+        Node stub = new Node(null);
+        head = stub;
+        tail = new AtomicReference<>(stub);
+    }
+
+    // Adds a message. Safe to call from any thread.
+    void add(KernelMessage message) {
+        Node node = new Node(message);
+        Node previous = tail.getAndSet(node);
+        // Publishing the link makes the message visible to the consumer
+        previous.next = node;
+    }
+
+    // Removes and returns the oldest message, or null if there is none. Consumer only.
+    // A message whose producer has swapped the tail but not yet linked its node is not seen until the link is made.
+    KernelMessage poll() {
+        Node next = head.next;
+        if (next == null) {
+            return null;
+        }
+        KernelMessage message = next.message;
+        next.message = null; // the node becomes the new stub
+        head = next;
+        return message;
+    }
+
+    // True if there is no message to take. Consumer only.
+    boolean isEmpty() {
+        return head.next == null;
+    }
+
+    // Drops every queued message. Consumer only.
+    void clear() {
+        while (poll() != null) {
+        }
+    }
+}
@@ -1,10 +1,21 @@
+import java.nio.file.Path;
 
 // I recommend you save console output to a file because there is a lot of output for this....
 
 public class Main {
+    // Size of physical memory when it is mapped to a file, the same 1 MB as the default heap memory
+    private static final long MAPPED_MEMORY_SIZE = 1024 * 1024;
+
+    // With a file name argument, physical memory is mapped to that file (BufferMemory.mapped) and its contents are
+    // kept in the file when the simulation is stopped
     public static void main(String[] args) throws InterruptedException {
         System.out.println("Main: Starting OS with Memory Tests..."); // Debug print
-        OS.Startup(new VirtualMemoryTestInitProcess());
+        if (args.length > 0) {
+            OS.Startup(new VirtualMemoryTestInitProcess(), Scheduler.DEFAULT_CPUS,
+                    BufferMemory.mapped(Path.of(args[0]), MAPPED_MEMORY_SIZE));
+        } else {
+            OS.Startup(new VirtualMemoryTestInitProcess());
+        }
         System.out.println("Main: OS Startup complete."); // Debug print
     }
-}
\ No newline at end of file
+}
@@ -12,6 +12,20 @@ public class MemoryTestInitProcess extends UserlandProcess {
         OS.CreateProcess(new MemoryTestProcess((byte)'B'), OS.PriorityType.interactive);
         cooperate();
 
+        System.out.println("MemoryTestInitProcess: Creating range operation test process.");
+        OS.CreateProcess(new RangeTestProcess(), OS.PriorityType.interactive);
+        cooperate();
+
+        System.out.println("MemoryTestInitProcess: Creating typed load and store test process.");
+        OS.CreateProcess(new WordTestProcess(), OS.PriorityType.interactive);
+        cooperate();
+
+        // Two processes using the same virtual pages, to test the TLB
+        System.out.println("MemoryTestInitProcess: Creating TLB test processes.");
+        OS.CreateProcess(new TLBTestProcess((byte) 'A'), OS.PriorityType.interactive);
+        OS.CreateProcess(new TLBTestProcess((byte) 'B'), OS.PriorityType.interactive);
+        cooperate();
+
         System.out.println("MemoryTestInitProcess: Test processes created. InitProcess will now exit.");
         System.out.println("MemoryTestInitProcess: Exiting.");
         OS.Exit();
@@ -1,3 +1,4 @@
+import java.util.Arrays;
 import java.util.Random;
 /**
  * MemoryTestProcess tests the functionality
@@ -45,16 +46,34 @@ public class MemoryTestProcess extends UserlandProcess {
         }
         System.out.println("MemoryTestProcess [" + (char) identifier + "]: Allocated block 1 at virtual address " + baseAddress1);
 
+        // --- Test 2a: Single byte access at the page boundary of block 1 ---
+        // Tests Hardware.Write(int address, byte value) and Hardware.Read(int address) on the last byte of the first
+        // page and the first byte of the second. Neither page has been touched yet, so each Write misses the TLB and
+        // goes through OS.GetMapping, and the Reads must find the bytes in the frames it mapped.
+        try {
+            int lastOfFirst = baseAddress1 + PAGE_SIZE - 1;
+            Hardware.Write(lastOfFirst, identifier);
+            Hardware.Write(lastOfFirst + 1, (byte) (identifier + 1));
+            if (Hardware.Read(lastOfFirst) == identifier && Hardware.Read(lastOfFirst + 1) == (byte) (identifier + 1)) {
+                System.out.println("MemoryTestProcess [" + (char) identifier + "]: SUCCESS reading back single bytes on both sides of a page boundary.");
+            } else {
+                System.err.println("MemoryTestProcess [" + (char) identifier + "]: FAILED reading back single bytes on both sides of a page boundary.");
+            }
+        } catch (Exception e) {
+            System.err.println("MemoryTestProcess [" + (char) identifier + "]: ERROR during single byte access to block 1: " + e.getMessage());
+            e.printStackTrace();
+            OS.Exit();
+            return;
+        }
+
         // --- Test 2: Write to allocated memory (block 1) ---
-        // Tests the Hardware.Write(int address, byte value) method, which simulates
-        // a STORE instruction. This implicitly tests the virtual-to-physical address
-        // translation, TLB lookup/miss handling, and OS.GetMapping kernel call upon TLB miss.
+        // Tests the Hardware.fill(int address, byte value, int len) range operation, which simulates
+        // a block STORE over both pages of the block. This implicitly tests the virtual-to-physical address
+        // translation, TLB lookup/miss handling, and OS.GetMapping kernel call upon TLB miss, once per page.
         System.out.println("MemoryTestProcess [" + (char) identifier + "]: Writing identifier to block 1...");
         try {
-            // Write to different locations within the allocated block
-            Hardware.Write(baseAddress1, identifier); // Write at the start (offset 0)
-            Hardware.Write(baseAddress1 + PAGE_SIZE, identifier); // Write at the start of the second page (offset 1024)
-            Hardware.Write(baseAddress1 + ALLOC_SIZE_1 - 1, identifier); // Write at the very end (offset 2047)
+            // Fill the whole allocated block, crossing from the first page into the second
+            Hardware.fill(baseAddress1, identifier, ALLOC_SIZE_1);
         } catch (Exception e) {
             // Catch potential exceptions during the hardware simulation (though segfaults should ideally kill the process directly)
             System.err.println("MemoryTestProcess [" + (char) identifier + "]: ERROR during write to block 1: " + e.getMessage());
@@ -66,21 +85,21 @@ public class MemoryTestProcess extends UserlandProcess {
         cooperate(); // Yield CPU to allow other processes to run, testing scheduling.
 
         // --- Test 3: Read from allocated memory (block 1) and verify ---
-        // Tests the Hardware.Read(int address) method, simulating a LOAD instruction.
+        // Tests the Hardware.readBytes range operation, simulating a block LOAD of the whole block.
         // Again, implicitly tests address translation, TLB, and GetMapping.
         // Verifies that data written previously is read back correctly, showing memory integrity
         // for this process and implicitly testing non-interference between processes (if others run).
         System.out.println("MemoryTestProcess [" + (char) identifier + "]: Reading identifier from block 1...");
         try {
-            byte val1 = Hardware.Read(baseAddress1);
-            byte val2 = Hardware.Read(baseAddress1 + PAGE_SIZE);
-            byte val3 = Hardware.Read(baseAddress1 + ALLOC_SIZE_1 - 1);
+            byte[] block1 = new byte[ALLOC_SIZE_1];
+            Hardware.readBytes(baseAddress1, block1, 0, ALLOC_SIZE_1);
 
-            // Verify data integrity
-            if (val1 == identifier && val2 == identifier && val3 == identifier) {
+            // Verify data integrity of every byte
+            int mismatch = firstMismatch(block1);
+            if (mismatch == -1) {
                 System.out.println("MemoryTestProcess [" + (char) identifier + "]: SUCCESS reading back correct data from block 1.");
             } else {
-                System.err.println("MemoryTestProcess [" + (char) identifier + "]: FAILED reading back data from block 1! Read: " + val1 + "," + val2 + "," + val3);
+                System.err.println("MemoryTestProcess [" + (char) identifier + "]: FAILED reading back data from block 1! Read " + block1[mismatch] + " at offset " + mismatch);
             }
         } catch (Exception e) {
             System.err.println("MemoryTestProcess [" + (char) identifier + "]: ERROR during read from block 1: " + e.getMessage());
@@ -103,18 +122,21 @@ public class MemoryTestProcess extends UserlandProcess {
             System.out.println("MemoryTestProcess [" + (char) identifier + "]: Allocated block 2 at virtual address " + baseAddress2);
 
             // --- Test 5: Write/Read for second block ---
-            // Further tests Hardware.Read/Write on the newly allocated second block.
+            // Further tests the range operations on the newly allocated second block: the whole block is written
+            // from an array with Hardware.writeBytes and read back with Hardware.readBytes.
             System.out.println("MemoryTestProcess [" + (char) identifier + "]: Writing/Reading identifier for block 2...");
             try {
-                Hardware.Write(baseAddress2, identifier); // Write at start of block 2
-                Hardware.Write(baseAddress2 + ALLOC_SIZE_2 - 1, identifier); // Write at end of block 2
-                byte val4 = Hardware.Read(baseAddress2);
-                byte val5 = Hardware.Read(baseAddress2 + ALLOC_SIZE_2 - 1);
+                byte[] block2 = new byte[ALLOC_SIZE_2];
+                Arrays.fill(block2, identifier);
+                Hardware.writeBytes(baseAddress2, block2, 0, ALLOC_SIZE_2);
+                Arrays.fill(block2, (byte) 0);
+                Hardware.readBytes(baseAddress2, block2, 0, ALLOC_SIZE_2);
                 // Verify data integrity for the second block
-                if (val4 == identifier && val5 == identifier) {
+                int mismatch = firstMismatch(block2);
+                if (mismatch == -1) {
                     System.out.println("MemoryTestProcess [" + (char) identifier + "]: SUCCESS writing/reading back correct data from block 2.");
                 } else {
-                    System.err.println("MemoryTestProcess [" + (char) identifier + "]: FAILED writing/reading back data from block 2! Read: " + val4 + "," + val5);
+                    System.err.println("MemoryTestProcess [" + (char) identifier + "]: FAILED writing/reading back data from block 2! Read " + block2[mismatch] + " at offset " + mismatch);
                 }
             } catch (Exception e) {
                 System.err.println("MemoryTestProcess [" + (char) identifier + "]: ERROR during R/W for block 2: " + e.getMessage());
@@ -128,7 +150,7 @@ public class MemoryTestProcess extends UserlandProcess {
         // --- Test 6: Free Memory ---
         // Tests the OS/Kernel call: boolean FreeMemory(int pointer, int size)
         // Verifies that the kernel can unmap virtual pages and mark the corresponding
-        // physical pages as available in its free list (`freeSpace` array).
+        // physical pages as available in its free frame allocator (`FrameAllocator`).
         System.out.println("MemoryTestProcess [" + (char) identifier + "]: Attempting to free block 1...");
         // Check if baseAddress1 is valid before trying to free
         if (baseAddress1 != -1) {
@@ -188,4 +210,14 @@ public class MemoryTestProcess extends UserlandProcess {
         System.out.println("MemoryTestProcess [" + (char) identifier + "]: Reached end of main loop.");
         OS.Exit();
     }
+
+    // Returns the index of the first byte that is not this process's identifier, or -1 if all of them are
+    private int firstMismatch(byte[] data) {
+        for (int i = 0; i < data.length; i++) {
+            if (data[i] != identifier) {
+                return i;
+            }
+        }
+        return -1;
+    }
 }
\ No newline at end of file
@@ -13,6 +13,11 @@ public class MessagesInitProcess extends UserlandProcess {
         OS.CreateProcess(new Pong(), OS.PriorityType.realtime);
         cooperate();
 
+        // Create the process that tests looking up processes by name.
+        System.out.println("MessagesInitProcess.main: Creating NameTestProcess.");
+        OS.CreateProcess(new NameTestProcess(NameTestProcess.CHECKER, -1), OS.PriorityType.interactive);
+        cooperate();
+
         System.out.println("MessagesInitProcess.main: Message passing test setup complete. Exiting MessagesInitProcess.");
         OS.Exit();
     }
@@ -0,0 +1,70 @@
+import java.util.Arrays;
+
+/**
+ * NameTestProcess tests looking up processes by name (OS.GetPidByName, GetNewestPidByName, GetPidsByName).
+ * The checker creates two more NameTestProcesses, so three live processes share the name. It checks that the
+ * oldest and newest pids and the full list come back in creation order. The newest one then messages the checker
+ * and exits, and the checker checks that its pid has been dropped from every lookup. The other one waits until the
+ * checker is done.
+ */
+public class NameTestProcess extends UserlandProcess {
+
+    public static final char CHECKER = 'C';
+    public static final char SHORT_LIVED = 'S';
+    public static final char LONG_LIVED = 'L';
+
+    private static final String NAME = "NameTestProcess";
+    // Lookups made while waiting for the short lived process to exit, 10 ms apart
+    private static final int EXIT_POLLS = 100;
+
+    // Checker the other two roles message, -1 for the checker
+    private final int checkerPid;
+
+    public NameTestProcess(char role, int checkerPid) {
+        super(role);
+        this.checkerPid = checkerPid;
+    }
+
+    @Override
+    public void main() throws InterruptedException {
+        switch (role) {
+            case CHECKER -> checkLookups();
+            case SHORT_LIVED -> OS.SendMessage(new KernelMessage(OS.GetPID(), checkerPid, 0, new byte[0]));
+            case LONG_LIVED -> OS.WaitForMessage();
+        }
+        OS.Exit();
+    }
+
+    // Creates the two other processes and looks them up while all three are alive and after the newest has exited
+    private void checkLookups() throws InterruptedException {
+        int self = OS.GetPID();
+        int longLived = OS.CreateProcess(new NameTestProcess(LONG_LIVED, self), OS.PriorityType.interactive);
+        int shortLived = OS.CreateProcess(new NameTestProcess(SHORT_LIVED, self), OS.PriorityType.interactive);
+
+        check(OS.GetPidByName(NAME) == self, "oldest process with the name is the checker");
+        check(OS.GetNewestPidByName(NAME) == shortLived, "newest process with the name is the last one created");
+        check(Arrays.equals(OS.GetPidsByName(NAME), new int[]{self, longLived, shortLived}),
+                "all three processes with the name are listed oldest first");
+
+        // The short lived process messages just before it exits
+        OS.WaitForMessage();
+        check(waitForExit(shortLived), "exited process is dropped from the name index");
+        check(OS.GetNewestPidByName(NAME) == longLived, "exited process is no longer the newest");
+        check(Arrays.equals(OS.GetPidsByName(NAME), new int[]{self, longLived}),
+                "exited process is no longer listed");
+        check(OS.GetNewestPidByName("NoSuchProcess") == -1 && OS.GetPidsByName("NoSuchProcess").length == 0,
+                "unknown name has no processes");
+        OS.SendMessage(new KernelMessage(self, longLived, 0, new byte[0]));
+    }
+
+    // Waits until pid is no longer listed under the name. False if it is still listed after EXIT_POLLS lookups.
+    private boolean waitForExit(int pid) throws InterruptedException {
+        for (int i = 0; i < EXIT_POLLS; i++) {
+            if (Arrays.stream(OS.GetPidsByName(NAME)).noneMatch(p -> p == pid)) {
+                return true;
+            }
+            OS.Sleep(10);
+        }
+        return false;
+    }
+}
@@ -9,37 +9,42 @@
 // - The kernel, PCB modifications, and Virtual File System (VFS) must correctly map user calls
 //   to device-specific implementations.
 
-import java.util.ArrayList;
-import java.util.List;
-
 public class OS {
 
     // The one and only instance of the kernel.
     private static Kernel ki;
 
-    // List used to pass system call parameters between userland and kernel.
-    // (This list is reused for each call, so it must be cleared before adding new parameters.)
-    public static List<Object> parameters = new ArrayList<>();
-
-
-    // Shared return value for system calls. Kernel writes to this and userland waits for it.
-    public static Object retVal;
+    // Each calling thread has at most one system call in flight, so its request object is reused across calls.
+    private static final ThreadLocal<SystemCall> calls = ThreadLocal.withInitial(SystemCall::new);
 
     // Enum defining the types of system calls. Includes process management calls and device I/O operations.
     public enum CallType {
         SwitchProcess, SendMessage, Open, Close, Read, Seek, Write,
         GetMapping, CreateProcess, Sleep, GetPID, AllocateMemory,
-        FreeMemory, GetPIDByName, WaitForMessage, Exit
+        FreeMemory, SendPages, Select, OpenChannel, CloseChannel, ChannelSend, ChannelReceive, GetPIDByName, GetNewestPIDByName, GetPIDsByName, WaitForMessage, Exit, SubmitBatch,
+        TimerWakeup, // raised by the scheduler's timer, not by userland
+        Reclaim // raised by the kernel when free frames run low, not by userland
     }
-    // Indicates the current system call type being processed.
-    public static CallType currentCall;
 
     // Priority types for process creation; used to determine scheduling behavior.
     public enum PriorityType { realtime, interactive, background }
 
-    // Starts the kernel thread if it is not null.
-    // This is invoked before making any system call to ensure the kernel is running.
-    private static void startTheKernel() throws InterruptedException {
+    // Returns this thread's request object, reset for a new call of the given type.
+    private static SystemCall newCall(CallType type) {
+        SystemCall call = calls.get();
+        call.reset(type);
+        return call;
+    }
+
+    // Submits the call to the kernel, starting the kernel thread if it is not running yet,
+    // and blocks until the kernel has completed the call.
+    private static void startTheKernel(SystemCall call) throws InterruptedException {
+        // The caller is a scheduled process only if this thread is a process currently running on a CPU.
+        // Calls made from other threads (OS.Startup on the main thread) must not stop any running process.
+        Process self = Process.current();
+        call.caller = (self != null) ? ki.getScheduler().getRunningProcess(self) : null;
+        ki.submit(call);
+
         // Start the kernel thread if it is not already running.
         if (!ki.isAlive()) {
             ki.start();
@@ -48,32 +53,41 @@ public class OS {
             ki.resumeProcess();
         }
 
-        // Yield control to the kernel:
-        // If the scheduler has a currently running process, stop that process.
-        if (ki.getScheduler() != null && ki.getScheduler().getCurrentlyRunning() != null) {
-            // System.out.println("OS.startTheKernel: Stopping " + ki.getScheduler().getCurrentlyRunning().userlandProcess.getClass().getSimpleName() + " for a system call: " + OS.currentCall);
-            ki.getScheduler().getCurrentlyRunning().stop();
-        }
-        waitForRetVal();
-    }
-
-    private static void waitForRetVal() {
-        // wait until the kernel completes its task and sets retVal.
-        while (retVal == null) {
-            try {
-                Thread.sleep(1);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-            }
+        // Yield control to the kernel: stop the calling process until the kernel schedules it again.
+        if (call.caller != null) {
+            // System.out.println("OS.startTheKernel: Stopping " + call.caller.userlandProcess.getClass().getSimpleName() + " for a system call: " + call.type);
+            call.caller.stop();
         }
+        // Block until the kernel completes this call and fills in its result.
+        call.await();
     }
 
     // Startup method to initialize the kernel and create the initial process.
     // This corresponds to the OS bootstrapping and must be done before any other process operations.
     // 'init' is the initial userland process to be created.
     public static void Startup(UserlandProcess init) throws InterruptedException {
+        Startup(init, Scheduler.DEFAULT_CPUS);
+    }
+
+    // Startup with the given number of simulated CPUs and physical memory backend (e.g. BufferMemory.offHeap for more
+    // page frames than the default 1 MB heap array, or BufferMemory.mapped for memory backed by a file).
+    // The simulation runs until the JVM is stopped; memory backed by a file is flushed to it then.
+    public static void Startup(UserlandProcess init, int cpuCount, PhysicalMemory memory) throws InterruptedException {
+        Hardware.configureMemory(memory);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            memory.flush();
+            System.out.println("OS: Physical memory flushed.");
+        }));
+        Startup(init, cpuCount);
+    }
+
+    // Startup with the given number of simulated CPUs. Each CPU gets its own IdleProcess to fall back on.
+    public static void Startup(UserlandProcess init, int cpuCount) throws InterruptedException {
+        if (cpuCount < 1) {
+            throw new IllegalArgumentException("At least one CPU is required");
+        }
         // System.out.println("OS.Startup: Initializing Kernel");
-        ki = new Kernel();
+        ki = new Kernel(cpuCount);
         // Pass kernel reference to scheduler, which will later manage the PCB (including tracking open device ids)
         ki.getScheduler().setKernel(ki);
 
@@ -87,8 +101,10 @@ public class OS {
         System.out.println("OS.Startup: Swap file opened successfully.");
 
         System.out.println("OS.Startup: Kernel initialized");
-        System.out.println("OS.Startup: Creating IdleProcess.");
-        CreateProcess(new IdleProcess(), PriorityType.background);
+        for (int i = 0; i < cpuCount; i++) {
+            System.out.println("OS.Startup: Creating IdleProcess.");
+            CreateProcess(new IdleProcess(), PriorityType.background);
+        }
         System.out.println("OS.Startup: Creating InitProcess");
         CreateProcess(init, PriorityType.interactive);
         System.out.println("OS.Startup: InitProcess created.");
@@ -102,55 +118,43 @@ public class OS {
     }
 
     // CreateProcess with an explicit priority.
-    // Clears previous parameters, adds the userland process and its priority to the parameters list,
-    // sets the current system call type to CreateProcess, and starts the kernel thread if needed.
-    // Waits for a return value (PID) from the kernel.
+    // Fills in a CreateProcess request with the userland process and its priority,
+    // submits it to the kernel (starting the kernel thread if needed) and waits for the PID it returns.
     public static int CreateProcess(UserlandProcess up, PriorityType priority) throws InterruptedException {
-        parameters.clear();
-        parameters.add(up);
-        parameters.add(priority);
-        currentCall = CallType.CreateProcess;
-        startTheKernel();
-        int pid = (int) retVal;
-        retVal = null;
-        return pid;
+        SystemCall call = newCall(CallType.CreateProcess);
+        call.ref = up;
+        call.priority = priority;
+        startTheKernel(call);
+        return call.intResult;
     }
 
     // switchProcess: Requests a process switch.
-    // Debug prints are used for tracing; clears parameters and sets the system call type.
+    // Submits a SwitchProcess request; the caller is stopped until the scheduler picks it again.
     public static void switchProcess() throws InterruptedException {
-        parameters.clear();
-        currentCall = CallType.SwitchProcess;
-        startTheKernel();
+        startTheKernel(newCall(CallType.SwitchProcess));
     }
 
     // GetPID: Retrieves the current process ID.
     // Sets the system call type, starts the kernel, and waits until the kernel returns the PID.
     // Returns the current process's PID.
     public static int GetPID() throws InterruptedException {
-        parameters.clear();
-        currentCall = CallType.GetPID;
-        startTheKernel();
-        int pid = (int) retVal;
-        retVal = null;
-        return pid;
+        SystemCall call = newCall(CallType.GetPID);
+        startTheKernel(call);
+        return call.intResult;
     }
 
     // Exit: Processes the exit system call.
     // On process termination, the kernel must ensure that all open devices are closed as per the assignment instructions.
     public static void Exit() throws InterruptedException {
-        parameters.clear();
-        currentCall = CallType.Exit;
-        startTheKernel();
+        startTheKernel(newCall(CallType.Exit));
     }
 
     // Sleep: Pauses process execution for the specified number of milliseconds.
     // The sleep duration is passed to the kernel as a parameter.
     public static void Sleep(int mills) throws InterruptedException {
-        parameters.clear();
-        parameters.add(mills);
-        currentCall = CallType.Sleep;
-        startTheKernel();
+        SystemCall call = newCall(CallType.Sleep);
+        call.arg0 = mills;
+        startTheKernel(call);
     }
 
     // ***** Device Calls *****
@@ -163,23 +167,18 @@ public class OS {
     // and calls the kernel, which delegates to the VFS.
     // Returns the device id (or VFS index) returned by the kernel.
     public static int Open(String s) throws InterruptedException {
-        parameters.clear();
-        parameters.add(s);
-        currentCall = CallType.Open;
-        startTheKernel();
-        int deviceId = (int) retVal;
-        retVal = null;
-        return deviceId;
+        SystemCall call = newCall(CallType.Open);
+        call.ref = s;
+        startTheKernel(call);
+        return call.intResult;
     }
 
     // Close: Performs a device close system call.
-    // Clears parameters, adds the device id, sets the system call type,
-    // and calls the kernel to handle the closure (including cleaning up PCB entries).
+    // Submits the device id to the kernel to handle the closure (including cleaning up PCB entries).
     public static void Close(int id) throws InterruptedException {
-        parameters.clear();
-        parameters.add(id);
-        currentCall = CallType.Close;
-        startTheKernel();
+        SystemCall call = newCall(CallType.Close);
+        call.arg0 = id;
+        startTheKernel(call);
     }
 
     // Read: Performs a device read system call.
@@ -187,110 +186,245 @@ public class OS {
     // which then delegates the call to the appropriate device via the VFS.
     // Returns a byte array containing the data read.
     public static byte[] Read(int id, int size) throws InterruptedException {
-        parameters.clear();
-        parameters.add(id);
-        parameters.add(size);
-        currentCall = CallType.Read;
-        startTheKernel();
-        byte[] dataRead = (byte[]) retVal;
-        retVal = null;
-        return dataRead;
+        SystemCall call = newCall(CallType.Read);
+        call.arg0 = id;
+        call.arg1 = size;
+        startTheKernel(call);
+        return (byte[]) call.refResult;
     }
 
     // Seek: Performs a device seek system call.
     // Instructs the device to adjust its internal pointer to a specified position.
     public static void Seek(int id, int to) throws InterruptedException {
-        parameters.clear();
-        parameters.add(id);
-        parameters.add(to);
-        currentCall = CallType.Seek;
-        startTheKernel();
+        SystemCall call = newCall(CallType.Seek);
+        call.arg0 = id;
+        call.arg1 = to;
+        startTheKernel(call);
     }
 
     // Write: Performs a device write system call.
     // Sends data to the device and waits for a return value indicating the number of bytes written.
     // Returns the number of bytes written.
     public static int Write(int id, byte[] data) throws InterruptedException {
-        parameters.clear();
-        parameters.add(id);
-        parameters.add(data);
-        currentCall = CallType.Write;
-        startTheKernel();
-        int bytesWritten = (int) retVal;
-        retVal = null;
-        return bytesWritten;
+        SystemCall call = newCall(CallType.Write);
+        call.arg0 = id;
+        call.ref = data;
+        startTheKernel(call);
+        return call.intResult;
+    }
+
+    // Submit: Hands every operation queued in the ring to the kernel in a single kernel entry.
+    // The kernel completes the entries in order; results are read back from the ring.
+    // Returns the number of entries completed (less than ring.size() if the process was terminated mid-batch).
+    public static int Submit(SyscallRing ring) throws InterruptedException {
+        SystemCall call = newCall(CallType.SubmitBatch);
+        call.ref = ring;
+        startTheKernel(call);
+        return call.intResult;
     }
 
     // ***** Message Calls  *****
 
-    // Sends a kernel message by forwarding the message to the kernel
+    // Sends a kernel message. A copy of the message is put straight into the receiver's mailbox from the
+    // sender's thread; the kernel is entered only to wake the receiver if it is blocked waiting for a message.
     public static void SendMessage(KernelMessage km) throws InterruptedException {
-        parameters.clear();
-        parameters.add(km);
-        currentCall = CallType.SendMessage;
+        Process self = Process.current();
+        PCB sender = (self != null) ? ki.getScheduler().getRunningProcess(self) : null;
+        km.setSenderPid(sender != null ? sender.pid : -1);
+
+        // Create copy of message so recipient gets its own instance (shared memory would allow overwriting)
+        KernelMessage messageCopy = new KernelMessage(km);
+        PCB receiver = ki.getScheduler().getPCB(messageCopy.getReceiverPid());
+        if (receiver == null) {
+            // System.out.println("OS.SendMessage: Recipient with pid " + messageCopy.getReceiverPid() + " not found.");
+            return;
+        }
+        receiver.messageQueue.add(messageCopy);
         // System.out.println("OS.SendMessage: " + km);
-        startTheKernel();
-        retVal = null;
+
+        // Checked after adding the message, see Kernel.WaitForMessage
+        if (receiver.waitingForMessage) {
+            SystemCall call = newCall(CallType.SendMessage);
+            call.arg0 = receiver.pid;
+            startTheKernel(call);
+        } else if (self != null) {
+            // No kernel entry, but still give up the CPU if the quantum has expired
+            self.cooperate();
+        }
+    }
+
+    // Sends a kernel message together with a block of the sender's memory without copying it.
+    // The pages from pointer to pointer + size are moved into a free range of the receiver's address space: the sender
+    // loses access to them and the receiver finds their address in getGrantAddress() of the delivered message.
+    // pointer and size must be page aligned, as for FreeMemory. Returns false (and keeps the pages) if the receiver
+    // does not exist, the range is not fully allocated, or the receiver has no room for it.
+    public static boolean SendMessage(KernelMessage km, int pointer, int size) throws InterruptedException {
+        SystemCall call = newCall(CallType.SendPages);
+        call.ref = km;
+        call.arg0 = pointer;
+        call.arg1 = size;
+        startTheKernel(call);
+        return call.intResult != 0;
     }
 
-    // Waits for a kernel message to arrive and returns it
+    // Waits for a kernel message to arrive and returns it.
+    // A message that is already in the mailbox is taken without entering the kernel.
     public static KernelMessage WaitForMessage() throws InterruptedException {
-        parameters.clear();
-        currentCall = CallType.WaitForMessage;
-        startTheKernel();
-        KernelMessage km = (KernelMessage) retVal;
-        retVal = null;
-        return km;
+        return WaitForMessage(-1);
     }
 
-    // Returns the pid of a process given its name
+    // Waits at most timeoutMs milliseconds for a kernel message and returns it, or null if none arrived in time.
+    // A timeout of 0 only checks the mailbox, a negative timeout waits forever.
+    public static KernelMessage WaitForMessage(int timeoutMs) throws InterruptedException {
+        Process self = Process.current();
+        PCB receiver = (self != null) ? ki.getScheduler().getRunningProcess(self) : null;
+        if (receiver != null) {
+            KernelMessage km = receiver.messageQueue.poll();
+            if (km != null) {
+                self.cooperate();
+                return km;
+            }
+        }
+        SystemCall call = newCall(CallType.WaitForMessage);
+        call.arg0 = timeoutMs;
+        startTheKernel(call);
+        return (KernelMessage) call.refResult;
+    }
+
+    // Waits until one of several message sources has something to receive, or the timeout passes.
+    // Returns the index in channelIds of a channel with a queued message (or that has been destroyed),
+    // channelIds.length if the process's own mailbox has a message, or -1 on timeout.
+    // Nothing is received: the caller then takes the message with a non-blocking ChannelReceive or WaitForMessage(0).
+    // A timeout of 0 only checks the sources, a negative timeout waits forever.
+    // Devices are not sources: device calls complete synchronously, so a device is always ready.
+    public static int Select(int[] channelIds, int timeoutMs) throws InterruptedException {
+        SystemCall call = newCall(CallType.Select);
+        call.ref = (channelIds != null) ? channelIds : new int[0];
+        call.arg0 = timeoutMs;
+        startTheKernel(call);
+        return call.intResult;
+    }
+
+    // ***** Channel Calls *****
+
+    // Opens the channel with the given name, creating it with room for 'capacity' messages if it does not exist yet.
+    // Every process using the channel opens it; the capacity of an existing channel is not changed.
+    // Returns the channel id, or -1 if the name or capacity is invalid.
+    public static int OpenChannel(String name, int capacity) throws InterruptedException {
+        SystemCall call = newCall(CallType.OpenChannel);
+        call.ref = name;
+        call.arg0 = capacity;
+        startTheKernel(call);
+        return call.intResult;
+    }
+
+    // Closes a channel id returned by OpenChannel. The channel is destroyed when every open has been closed,
+    // processes still blocked on it are woken with a failed send or a null message.
+    // Returns false if the calling process does not have the channel open. Channels a process still has open when it
+    // exits are closed for it.
+    public static boolean CloseChannel(int id) throws InterruptedException {
+        SystemCall call = newCall(CallType.CloseChannel);
+        call.arg0 = id;
+        startTheKernel(call);
+        return call.intResult != 0;
+    }
+
+    // Sends a copy of the message on a channel, blocking while the channel is full.
+    // Returns false if the channel does not exist (or was closed while waiting).
+    public static boolean ChannelSend(int id, KernelMessage km) throws InterruptedException {
+        return ChannelSend(id, km, true);
+    }
+
+    // Sends a copy of the message on a channel. If the channel is full, either blocks until there is room
+    // or, when block is false, returns false straight away.
+    public static boolean ChannelSend(int id, KernelMessage km, boolean block) throws InterruptedException {
+        SystemCall call = newCall(CallType.ChannelSend);
+        call.arg0 = id;
+        call.arg2 = block ? 1 : 0;
+        call.ref = km;
+        startTheKernel(call);
+        return call.intResult != 0;
+    }
+
+    // Receives the oldest message on a channel, blocking until there is one.
+    public static KernelMessage ChannelReceive(int id) throws InterruptedException {
+        return ChannelReceive(id, Channel.ANY_TYPE, true);
+    }
+
+    // Receives the oldest message of the given type on a channel (Channel.ANY_TYPE for any type).
+    // Messages of other types stay queued. If there is no such message, either blocks until one arrives
+    // or, when block is false, returns null straight away. Also returns null if the channel does not exist.
+    public static KernelMessage ChannelReceive(int id, int messageType, boolean block) throws InterruptedException {
+        SystemCall call = newCall(CallType.ChannelReceive);
+        call.arg0 = id;
+        call.arg1 = messageType;
+        call.arg2 = block ? 1 : 0;
+        startTheKernel(call);
+        return (KernelMessage) call.refResult;
+    }
+
+    // Returns the pid of a process given its name. If several processes share the name, the oldest one is returned.
     public static int GetPidByName(String name) throws InterruptedException {
-        parameters.clear();
-        parameters.add(name);
-        currentCall = CallType.GetPIDByName;
-        startTheKernel();
-        int pid = (int) retVal;
-        retVal = null;
-        return pid;
+        SystemCall call = newCall(CallType.GetPIDByName);
+        call.ref = name;
+        startTheKernel(call);
+        return call.intResult;
+    }
+
+    // Returns the pid of the most recently created process with the given name, or -1 if there is none
+    public static int GetNewestPidByName(String name) throws InterruptedException {
+        SystemCall call = newCall(CallType.GetNewestPIDByName);
+        call.ref = name;
+        startTheKernel(call);
+        return call.intResult;
+    }
+
+    // Returns the pids of every process with the given name, oldest first
+    public static int[] GetPidsByName(String name) throws InterruptedException {
+        SystemCall call = newCall(CallType.GetPIDsByName);
+        call.ref = name;
+        startTheKernel(call);
+        return (int[]) call.refResult;
     }
 
     // ***** Memory Calls *****
 
     // Obtain the mapping for a virtual page.
     public static void GetMapping(int virtualPageNum) throws InterruptedException {
-        parameters.clear();
-        parameters.add(virtualPageNum);
-        currentCall = CallType.GetMapping;
-        startTheKernel();
-        retVal = null;
+        GetMapping(virtualPageNum, true);
+    }
+
+    // Maps a virtual page for a read or a write. A read of a page that was never written is mapped to the shared
+    // zero page without taking a frame of its own.
+    public static void GetMapping(int virtualPageNum, boolean write) throws InterruptedException {
+        SystemCall call = newCall(CallType.GetMapping);
+        call.arg0 = virtualPageNum;
+        call.arg1 = write ? 1 : 0;
+        startTheKernel(call);
     }
 
     // Returns the start virtual address.
     public static int AllocateMemory(int size) throws InterruptedException {
-        parameters.clear();
-        parameters.add(size);
-        currentCall = CallType.AllocateMemory;
-        startTheKernel();
-        int startVirtualAddress = (int) retVal;
+        SystemCall call = newCall(CallType.AllocateMemory);
+        call.arg0 = size;
+        startTheKernel(call);
+        int startVirtualAddress = call.intResult;
         if (startVirtualAddress == -1) {
             System.out.println("OS.AllocateMemory: Memory allocation failed");
         }
-        retVal = null;
         return startVirtualAddress;
     }
 
     // Returns true if the memory was freed successfully, false otherwise. Takes the virtual address and the amount to free
     public static boolean FreeMemory(int pointer, int size) throws InterruptedException {
-        parameters.clear();
-        parameters.add(pointer);
-        parameters.add(size);
-        currentCall = CallType.FreeMemory;
-        startTheKernel();
-        boolean success = (boolean) retVal;
+        SystemCall call = newCall(CallType.FreeMemory);
+        call.arg0 = pointer;
+        call.arg1 = size;
+        startTheKernel(call);
+        boolean success = call.intResult != 0;
         if (!success) {
             System.out.println("OS.FreeMemory: Memory free failed");
         }
-        retVal = null;
         return success;
     }
 }
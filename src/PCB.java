@@ -1,17 +1,30 @@
-import java.util.LinkedList;
+import java.util.ArrayList;
 
 public class PCB { // Process Control Block
     private static int nextPid = 1;
     public final UserlandProcess userlandProcess;
     public int pid;
-    public boolean waitingForMessage; // flag to track if process is waiting on a message
+    public volatile boolean waitingForMessage; // flag to track if process is waiting on a message; read by senders
     private OS.PriorityType priority;
     private int timeoutCount; // tracks consecutive timeouts
     public long wakeupTime;
     public int[] openDevices; // array to track open device VFS ids; -1 means empty
+    final ArrayList<Integer> openChannels = new ArrayList<>(); // ids of channels opened and not closed yet, one per open
     final String name; // process name for name based lookup
-    public LinkedList<KernelMessage> messageQueue = new LinkedList<>();
+    public final Mailbox messageQueue = new Mailbox(); // senders add to it directly from their own thread
+    SystemCall messageCall; // WaitForMessage or Select call that is blocked until a message arrives
+    long waitDeadline; // time the blocked messageCall times out at, if it has a timeout
+    boolean blocked; // parked in the kernel on a channel, not runnable until woken
+    // Links for the intrusive ready queue the process is waiting in (see ReadyQueue); readyQueue is null when not queued
+    PCB prevReady;
+    PCB nextReady;
+    ReadyQueue readyQueue;
     VirtualToPhysicalMapping[] pageTable = new VirtualToPhysicalMapping[100];
+    int nextSequentialPage = -1; // page a sequential scan would fault on next, see Kernel.readAhead
+    int readAheadPages; // number of swapped pages to bring in ahead of a sequential fault
+    // Swap slots reserved for this process's pages, [swapClusterNext, swapClusterEnd), so they sit together in the file
+    int swapClusterNext;
+    int swapClusterEnd;
 
     // Only kernel should manage PCB's
     PCB(UserlandProcess up, OS.PriorityType priority) {
@@ -21,6 +34,7 @@ public class PCB { // Process Control Block
 //                + ", PID: " + nextPid);
 
         pid = nextPid++; // Process gets a pid, next process gets the next pid up
+        up.asid = pid; // pids are never reused, so the pid identifies the address space in the TLBs
         this.userlandProcess = up;
         this.name = up.getClass().getSimpleName();
         this.priority = priority;
@@ -0,0 +1,225 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * PagingTestProcess tests page replacement (see Kernel.evictPage).
+ * The evictor fills a few pages with a pattern, then starts fillers that together write twice as many pages as
+ * there are physical frames while it is blocked, so the clock has to go round every frame and evict its pages.
+ * Each filler reports to the evictor when it has written and checked its own pages, and holds them until the
+ * evictor releases it, so the memory stays full until the last filler is done. The evictor then reads its pages
+ * back from swap and checks them.
+ * The evictor reads them back in order one page at a time, so every fault is sequential and reads the following
+ * pages ahead (see Kernel.readAhead): it checks that each window, doubling from one page, is in the TLB before the
+ * pages are touched and the page after it is not. It then writes new data over the pages read ahead, has them
+ * evicted again and checks the new data.
+ * The evictor also has pages of each kind the compressed pool treats differently when they are evicted (see
+ * CompressedPool.store): pages it wrote zeroes to, which are dropped, a repeating pattern, which is kept compressed,
+ * and random bytes, which do not compress and go to the swap file. Each kind is checked on its own.
+ * The copy on write roles test the shared zero frame (see Kernel.GetMapping): a page that is read before it is ever
+ * written is mapped read only to one frame of zeroes shared by every process. The writer and the reader both read
+ * their page first, then the writer writes to its page, which must give it a copy of its own. The reader checks
+ * that its page still reads as zeroes afterwards, then writes to it and gets a copy of its own as well.
+ */
+public class PagingTestProcess extends UserlandProcess {
+
+    public static final char EVICTOR = 'E';
+    public static final char FILLER = 'F';
+    public static final char COW_WRITER = 'W';
+    public static final char COW_READER = 'R';
+
+    private static final int PAGE_SIZE = 1024;
+    // Pages of the evictor
+    private static final int PAGES = 16;
+    // Pages of each filler
+    private static final int FILLER_PAGES = 100;
+    // Most pages read ahead of one fault, see Kernel.MAX_READ_AHEAD
+    private static final int MAX_READ_AHEAD = 8;
+    // Pages of the evictor of each kind of content
+    private static final int KIND_PAGES = 4;
+
+    // Process a filler reports to or the copy on write reader starts with, -1 for the others
+    private final int peerPid;
+
+    public PagingTestProcess(char role, int peerPid) {
+        super(role);
+        this.peerPid = peerPid;
+    }
+
+    @Override
+    public void main() throws InterruptedException {
+        switch (role) {
+            case EVICTOR -> evict();
+            case FILLER -> fill();
+            case COW_WRITER -> writeShared();
+            case COW_READER -> readShared();
+        }
+        OS.Exit();
+    }
+
+    // Writes its pages, has them evicted and checks them
+    private void evict() throws InterruptedException {
+        int base = OS.AllocateMemory(PAGES * PAGE_SIZE);
+        if (base == -1) {
+            System.err.println("PagingTestProcess [E]: FAILED allocation.");
+            return;
+        }
+        byte[] expected = pattern(1);
+        Hardware.writeBytes(base, expected, 0, expected.length);
+
+        // One block for each kind of content, written after the pattern so a scan of the pattern stops before them
+        int kinds = OS.AllocateMemory(3 * KIND_PAGES * PAGE_SIZE);
+        if (kinds == -1) {
+            System.err.println("PagingTestProcess [E]: FAILED allocation.");
+            return;
+        }
+        byte[] zeroes = new byte[KIND_PAGES * PAGE_SIZE];
+        byte[] repeating = new byte[KIND_PAGES * PAGE_SIZE];
+        for (int i = 0; i < repeating.length; i++) {
+            repeating[i] = (byte) ('a' + i % 26);
+        }
+        byte[] random = new byte[KIND_PAGES * PAGE_SIZE];
+        new Random(42).nextBytes(random);
+        Hardware.writeBytes(kinds, zeroes, 0, zeroes.length);
+        Hardware.writeBytes(kinds + zeroes.length, repeating, 0, repeating.length);
+        Hardware.writeBytes(kinds + 2 * zeroes.length, random, 0, random.length);
+
+        fillMemory();
+        checkReadAhead(base);
+        check(matches(base, expected), "pages read back after the clock evicted them");
+        check(matches(kinds, zeroes), "pages written with zeroes read back as zeroes after being dropped");
+        check(matches(kinds + zeroes.length, repeating), "pages with a repeating pattern read back after being compressed");
+        check(matches(kinds + 2 * zeroes.length, random), "pages of random bytes read back from the swap file");
+        OS.FreeMemory(kinds, 3 * KIND_PAGES * PAGE_SIZE);
+
+        // Every page is in memory again, most of them brought in by read-ahead
+        expected = pattern(PAGES + 1);
+        Hardware.writeBytes(base, expected, 0, expected.length);
+        fillMemory();
+        check(matches(base, expected), "pages written after being read ahead read back after a second eviction");
+        OS.FreeMemory(base, PAGES * PAGE_SIZE);
+    }
+
+    // Contents of the evictor's pages, each page filled with its own byte counting up from first
+    private byte[] pattern(int first) {
+        byte[] data = new byte[PAGES * PAGE_SIZE];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i / PAGE_SIZE + first);
+        }
+        return data;
+    }
+
+    // Touches the evicted pages one at a time in order. The fault on page 0 starts the scan, every fault after it is
+    // sequential and reads the window of pages after it ahead, one page, then two, then four.
+    private void checkReadAhead(int base) throws InterruptedException {
+        Hardware.Read(base);
+        int page = 1;
+        for (int window = 1; window <= MAX_READ_AHEAD && page + window + 1 < PAGES; window *= 2) {
+            Hardware.Read(base + page * PAGE_SIZE);
+            boolean ahead = true;
+            for (int i = 1; i <= window; i++) {
+                ahead &= cached(base, page + i);
+            }
+            check(ahead && !cached(base, page + window + 1),
+                    "fault on page " + page + " read the next " + window + " pages ahead and no more");
+            // Touching the pages read ahead does not fault, the next fault is on the page after the window
+            for (int i = 1; i <= window; i++) {
+                Hardware.Read(base + (page + i) * PAGE_SIZE);
+            }
+            page += window + 1;
+        }
+    }
+
+    // True if the TLB of this CPU holds the given page of the block at base
+    private boolean cached(int base, int page) {
+        return Hardware.TLB[cpu].lookup(asid, base / PAGE_SIZE + page) != null;
+    }
+
+    // Starts enough fillers to write every physical frame twice over and waits until all of them are done, then
+    // lets them exit
+    private void fillMemory() throws InterruptedException {
+        int fillers = 2 * Hardware.frameCount() / FILLER_PAGES + 1;
+        System.out.println("PagingTestProcess [E]: Starting " + fillers + " fillers.");
+        int[] pids = new int[fillers];
+        int self = OS.GetPID();
+        for (int i = 0; i < fillers; i++) {
+            pids[i] = OS.CreateProcess(new PagingTestProcess(FILLER, self), OS.PriorityType.interactive);
+        }
+        for (int i = 0; i < fillers; i++) {
+            OS.WaitForMessage();
+        }
+        for (int pid : pids) {
+            OS.SendMessage(new KernelMessage(self, pid, 0, new byte[0]));
+        }
+        // Let them exit and free their frames
+        OS.Sleep(100);
+    }
+
+    // Writes every page, reads them back, reports to the evictor and waits to be released
+    private void fill() throws InterruptedException {
+        int base = OS.AllocateMemory(FILLER_PAGES * PAGE_SIZE);
+        if (base == -1) {
+            System.err.println("PagingTestProcess [F]: FAILED allocation.");
+            return;
+        }
+        int pid = OS.GetPID();
+        byte[] expected = new byte[FILLER_PAGES * PAGE_SIZE];
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = (byte) pid;
+        }
+        for (int i = 0; i < FILLER_PAGES; i++) {
+            Hardware.writeBytes(base + i * PAGE_SIZE, expected, i * PAGE_SIZE, PAGE_SIZE);
+            cooperate();
+        }
+        if (!matches(base, expected)) {
+            System.err.println("PagingTestProcess [F]: FAILED reading back the pages of filler " + pid + ".");
+        }
+        OS.SendMessage(new KernelMessage(pid, peerPid, 0, new byte[0]));
+        OS.WaitForMessage();
+    }
+
+    // Reads its page, which maps the shared zero frame, and writes to it once the reader has read its own page
+    private void writeShared() throws InterruptedException {
+        int base = OS.AllocateMemory(PAGE_SIZE);
+        if (base == -1) {
+            System.err.println("PagingTestProcess [W]: FAILED allocation.");
+            return;
+        }
+        check(matches(base, new byte[PAGE_SIZE]), "page never written reads as zeroes");
+
+        // The reader has mapped the zero frame too
+        KernelMessage message = OS.WaitForMessage();
+        Hardware.Write(base + 10, (byte) 77);
+        byte[] expected = new byte[PAGE_SIZE];
+        expected[10] = 77;
+        check(matches(base, expected), "write to the zero page gives the writer a copy of its own");
+        OS.SendMessage(new KernelMessage(OS.GetPID(), message.getSenderPid(), 0, new byte[0]));
+    }
+
+    // Reads its page, which maps the shared zero frame, lets the writer write to its own page and checks that the
+    // zero frame was not changed, then writes to its page
+    private void readShared() throws InterruptedException {
+        int base = OS.AllocateMemory(PAGE_SIZE);
+        if (base == -1) {
+            System.err.println("PagingTestProcess [R]: FAILED allocation.");
+            return;
+        }
+        byte[] zeroes = new byte[PAGE_SIZE];
+        check(matches(base, zeroes), "page never written reads as zeroes");
+
+        OS.SendMessage(new KernelMessage(OS.GetPID(), peerPid, 0, new byte[0]));
+        OS.WaitForMessage();
+        check(matches(base, zeroes), "page still reads as zeroes after another process wrote to its zero page");
+
+        Hardware.Write(base + 10, (byte) 55);
+        byte[] expected = new byte[PAGE_SIZE];
+        expected[10] = 55;
+        check(matches(base, expected), "write to the zero page gives the reader a copy of its own");
+    }
+
+    // True if the memory from base holds the expected bytes
+    private boolean matches(int base, byte[] expected) throws InterruptedException {
+        byte[] data = new byte[expected.length];
+        Hardware.readBytes(base, data, 0, data.length);
+        return Arrays.equals(data, expected);
+    }
+}
@@ -0,0 +1,49 @@
+import java.nio.ByteBuffer;
+
+// Backing store for the simulated machine's physical memory (see Hardware.memory).
+// Addresses are byte addresses into physical memory. Every access stays within one physical page, so an
+// implementation that splits memory into chunks of a whole number of pages never has to split an access.
+// Multi-byte values are little-endian.
+
+public interface PhysicalMemory {
+    // Size of physical memory in bytes
+    long size();
+
+    byte get(long address);
+
+    void put(long address, byte value);
+
+    short getShort(long address);
+
+    void putShort(long address, short value);
+
+    int getInt(long address);
+
+    void putInt(long address, int value);
+
+    long getLong(long address);
+
+    void putLong(long address, long value);
+
+    // Copies len bytes starting at address into dst[off..off+len)
+    void read(long address, byte[] dst, int off, int len);
+
+    // Copies src[off..off+len) to memory starting at address
+    void write(long address, byte[] src, int off, int len);
+
+    // Copies len bytes starting at address into dst at index, directly without an intermediate array
+    void read(long address, ByteBuffer dst, int index, int len);
+
+    // Copies len bytes of src at index to memory starting at address, directly without an intermediate array
+    void write(long address, ByteBuffer src, int index, int len);
+
+    // Sets len bytes starting at address to value
+    void fill(long address, int len, byte value);
+
+    // Copies len bytes from one address to another, the ranges may overlap
+    void copy(long from, long to, int len);
+
+    // Writes memory out to its backing file, if it has one
+    default void flush() {
+    }
+}
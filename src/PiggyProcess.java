@@ -3,6 +3,8 @@ public class PiggyProcess extends UserlandProcess {
     public static final int VIRTUAL_PAGES = 100;
     private static final int PAGE_SIZE = 1024;
     private static final int ALLOC_SIZE = VIRTUAL_PAGES * PAGE_SIZE;
+    // Pages written or read by one range operation
+    private static final int PAGES_PER_STEP = 10;
 
     @Override
     public void main() throws InterruptedException {
@@ -20,45 +22,43 @@ public class PiggyProcess extends UserlandProcess {
         }
         System.out.println("PiggyProcess [" + myPid + "]: Allocated memory starting at VA " + baseAddress);
 
-        // Touch every page by writing to it and force page faults
+        // Touch every page by filling it with the identifier and force page faults, ten pages per fill
         System.out.println("PiggyProcess [" + myPid + "]: Writing identifier to all " + VIRTUAL_PAGES + " pages...");
-        for (int i = 0; i < VIRTUAL_PAGES; i++) {
+        for (int i = 0; i < VIRTUAL_PAGES; i += PAGES_PER_STEP) {
             int address = baseAddress + i * PAGE_SIZE;
             try {
-                Hardware.Write(address, identifierByte);
+                Hardware.fill(address, identifierByte, PAGES_PER_STEP * PAGE_SIZE);
             } catch (Exception e) {
                 System.err.println("PiggyProcess [" + myPid + "]: ERROR writing to VPage " + i + " (VA " + address + "): " + e.getMessage());
                 OS.Exit(); return; // Exit on error
             }
-            if (i % 10 == 0) { // Cooperate periodically
-                cooperate();
-            }
+            cooperate(); // Cooperate periodically
         }
         System.out.println("\nPiggyProcess [" + myPid + "]: Finished writing to all pages.");
         cooperate();
 
 
-        // 3. Verify data by reading back from each page
+        // 3. Verify data by reading back every byte, ten pages per read
         System.out.println("PiggyProcess [" + myPid + "]: Verifying data in all " + VIRTUAL_PAGES + " pages...");
         boolean success = true;
-        for (int i = 0; i < VIRTUAL_PAGES; i++) {
+        byte[] buffer = new byte[PAGES_PER_STEP * PAGE_SIZE];
+        for (int i = 0; i < VIRTUAL_PAGES; i += PAGES_PER_STEP) {
             int address = baseAddress + i * PAGE_SIZE;
             try {
-                byte valueRead = Hardware.Read(address);
-                if (valueRead != identifierByte) {
-                    System.err.println("\nPiggyProcess [" + myPid + "]: FAILED verification at VPage " + i + " (VA " + address + ")! Expected " + identifierByte + ", got " + valueRead);
-                    success = false;
+                Hardware.readBytes(address, buffer, 0, buffer.length);
+                for (int j = 0; j < buffer.length; j++) {
+                    if (buffer[j] != identifierByte) {
+                        System.err.println("\nPiggyProcess [" + myPid + "]: FAILED verification at VA " + (address + j) + "! Expected " + identifierByte + ", got " + buffer[j]);
+                        success = false;
+                        break;
+                    }
                 }
-
-
             } catch (Exception e) {
                 System.err.println("\nPiggyProcess [" + myPid + "]: ERROR reading from VPage " + i + " (VA " + address + "): " + e.getMessage());
                 success = false;
                 OS.Exit(); return; // Exit on error
             }
-            if (i % 10 == 0) { // Cooperate periodically
-                cooperate();
-            }
+            cooperate(); // Cooperate periodically
         }
 
         if (success) {
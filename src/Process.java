@@ -12,6 +12,18 @@ public abstract class Process implements Runnable {
     public volatile boolean isExpired = false;
     // Flag to mark that the process has exited (finished execution).
     public volatile boolean exited = false;
+    // Index of the CPU this process was last dispatched to. Set by the scheduler, read by Hardware to pick the TLB.
+    volatile int cpu = 0;
+    // Address space id of this process (its pid), tags the process's TLB entries. Set when its PCB is created.
+    int asid = -1;
+
+    // The process whose thread is the current thread. Set when the thread starts running.
+    private static final ThreadLocal<Process> current = new ThreadLocal<>();
+
+    // Returns the process executing on the calling thread, or null for threads that are not processes (e.g. main).
+    static Process current() {
+        return current.get();
+    }
 
 
     // Process constructor.
@@ -83,6 +95,7 @@ public abstract class Process implements Runnable {
     @Override
     public void run() {
         // System.out.println("Process.run: Run method invoked for process: " + this.getClass().getSimpleName());
+        current.set(this);
         try {
             available.acquire();
             if (exited) {
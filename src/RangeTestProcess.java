@@ -0,0 +1,59 @@
+import java.util.Arrays;
+
+/**
+ * RangeTestProcess tests the range operations of Hardware (fill, copy, readBytes, writeBytes) where they split into
+ * pieces at page boundaries.
+ * A fill that starts near the end of one fresh page and runs into the next must change only its own bytes.
+ * Two overlapping copies that cross page boundaries at different offsets in source and destination, one towards
+ * higher and one towards lower addresses, must leave memory as System.arraycopy (a memmove) would.
+ */
+public class RangeTestProcess extends UserlandProcess {
+
+    private static final int PAGE_SIZE = 1024;
+    private static final int SIZE = 3 * PAGE_SIZE;
+
+    @Override
+    public void main() throws InterruptedException {
+        int base = OS.AllocateMemory(SIZE);
+        if (base == -1) {
+            System.err.println("RangeTestProcess: FAILED allocation.");
+            OS.Exit();
+            return;
+        }
+
+        // Fill 20 bytes across the boundary of pages 0 and 1, neither of which has been touched yet
+        Hardware.fill(base + PAGE_SIZE - 10, (byte) 0x5A, 20);
+        byte[] expected = new byte[SIZE];
+        Arrays.fill(expected, PAGE_SIZE - 10, PAGE_SIZE + 10, (byte) 0x5A);
+        check(Arrays.equals(readAll(base), expected), "fill across a page boundary changes only its own bytes");
+
+        // Destination starts inside the source: the copy has to run from the end
+        checkCopy(base, 100, 900, 1800, "overlapping copy to a higher address");
+        // Source starts inside the destination: the copy runs from the start
+        checkCopy(base, 900, 100, 1800, "overlapping copy to a lower address");
+
+        OS.FreeMemory(base, SIZE);
+        OS.Exit();
+    }
+
+    // Fills the block with a pattern, copies len bytes from offset from to offset to, and compares the block with
+    // what System.arraycopy does to the same pattern
+    private void checkCopy(int base, int from, int to, int len, String what) throws InterruptedException {
+        byte[] before = new byte[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            before[i] = (byte) (i * 31 + i / 251);
+        }
+        Hardware.writeBytes(base, before, 0, SIZE);
+        Hardware.copy(base + from, base + to, len);
+
+        byte[] expected = before.clone();
+        System.arraycopy(expected, from, expected, to, len);
+        check(Arrays.equals(readAll(base), expected), what);
+    }
+
+    private byte[] readAll(int base) throws InterruptedException {
+        byte[] data = new byte[SIZE];
+        Hardware.readBytes(base, data, 0, SIZE);
+        return data;
+    }
+}
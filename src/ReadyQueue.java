@@ -0,0 +1,84 @@
+/*
+ * Ready queue of processes at one priority level on one CPU.
+ * The queue is an intrusive doubly linked list: the links live in the PCBs themselves (prevReady, nextReady, readyQueue),
+ * so adding, removing from either end and removing a process from the middle (e.g. when it exits) are all O(1)
+ * and do not allocate. A PCB can be in at most one ready queue at a time.
+ */
+public class ReadyQueue {
+
+    // Priority level of the processes in this queue
+    final OS.PriorityType priority;
+
+    private PCB head;
+    private PCB tail;
+    private int size;
+
+    public ReadyQueue(OS.PriorityType priority) {
+        this.priority = priority;
+    }
+
+    // Appends a process to the tail of the queue
+    void addLast(PCB pcb) {
+        if (pcb.readyQueue != null) {
+            throw new IllegalStateException("PCB " + pcb.pid + " is already in a ready queue");
+        }
+        pcb.readyQueue = this;
+        pcb.prevReady = tail;
+        pcb.nextReady = null;
+        if (tail == null) {
+            head = pcb;
+        } else {
+            tail.nextReady = pcb;
+        }
+        tail = pcb;
+        size++;
+    }
+
+    // Removes and returns the process at the head, or null if the queue is empty
+    PCB pollFirst() {
+        PCB pcb = head;
+        if (pcb != null) {
+            remove(pcb);
+        }
+        return pcb;
+    }
+
+    // Removes and returns the process at the tail, or null if the queue is empty
+    PCB pollLast() {
+        PCB pcb = tail;
+        if (pcb != null) {
+            remove(pcb);
+        }
+        return pcb;
+    }
+
+    // Unlinks a process from this queue. Returns false if the process is not in this queue.
+    boolean remove(PCB pcb) {
+        if (pcb.readyQueue != this) {
+            return false;
+        }
+        if (pcb.prevReady == null) {
+            head = pcb.nextReady;
+        } else {
+            pcb.prevReady.nextReady = pcb.nextReady;
+        }
+        if (pcb.nextReady == null) {
+            tail = pcb.prevReady;
+        } else {
+            pcb.nextReady.prevReady = pcb.prevReady;
+        }
+        pcb.prevReady = null;
+        pcb.nextReady = null;
+        pcb.readyQueue = null;
+        size--;
+        return true;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+}
@@ -0,0 +1,46 @@
+// Does the FileTestProcess steps through a SyscallRing: the seek + write + seek + read sequence goes to the kernel
+// in one OS.Submit, followed by a batch that allocates and frees memory
+public class RingTestProcess extends UserlandProcess {
+    @Override
+    public void main() throws InterruptedException {
+        // open file device with filename ringtestfile.txt
+        int fileSlot = OS.Open("file ringtestfile.txt");
+        System.out.println("RingTestProcess: Opened file device slot " + fileSlot);
+        byte[] content = "HelloRing".getBytes();
+
+        // queue seek, write, seek and read, and submit them together
+        SyscallRing ring = new SyscallRing(8);
+        ring.seek(fileSlot, 0);
+        int write = ring.write(fileSlot, content);
+        ring.seek(fileSlot, 0);
+        int read = ring.read(fileSlot, content.length);
+        int completed = OS.Submit(ring);
+        System.out.println("RingTestProcess: Kernel completed " + completed + " of " + ring.size() + " entries");
+        if (completed == ring.size() && ring.result(write) == content.length
+                && new String(content).equals(new String(ring.data(read)))) {
+            System.out.println("RingTestProcess: SUCCESS batched write and read back " + new String(ring.data(read)));
+        } else {
+            System.err.println("RingTestProcess: FAILED batched write and read back");
+        }
+
+        // reuse the ring for a memory batch: allocate two blocks, then free both
+        ring.clear();
+        int first = ring.allocateMemory(2048);
+        int second = ring.allocateMemory(1024);
+        OS.Submit(ring);
+        int firstAddress = ring.result(first);
+        int secondAddress = ring.result(second);
+        ring.clear();
+        int freeFirst = ring.freeMemory(firstAddress, 2048);
+        int freeSecond = ring.freeMemory(secondAddress, 1024);
+        ring.close(fileSlot);
+        OS.Submit(ring);
+        if (firstAddress != -1 && secondAddress != -1 && ring.result(freeFirst) == 1 && ring.result(freeSecond) == 1) {
+            System.out.println("RingTestProcess: SUCCESS batched allocate at " + firstAddress + " and " + secondAddress + " and free");
+        } else {
+            System.err.println("RingTestProcess: FAILED batched allocate and free");
+        }
+        System.out.println("RingTestProcess: Closed file device");
+        OS.Exit();
+    }
+}
@@ -1,42 +1,92 @@
 import java.util.*;
 import java.time.Clock;
 import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class Scheduler {
-    // Separate queues for each priority type.
-    private LinkedList<PCB> realTimeQueue = new LinkedList<>();
-    private LinkedList<PCB> interactiveQueue = new LinkedList<>();
-    private LinkedList<PCB> backgroundQueue = new LinkedList<>();
+    // Number of simulated CPUs used when OS.Startup is not given a count.
+    public static final int DEFAULT_CPUS = 1;
+    // Length of a CPU's timer quantum in milliseconds.
+    private static final int QUANTUM = 250;
+
+    // Each CPU has separate ready queues for each priority type (see CPU).
+    // Number of queued processes per priority type across all CPUs, so emptiness checks do not scan every CPU.
+    private final int[] readyCount = new int[OS.PriorityType.values().length];
 
     // Priority queue for sleeping processes ordered by wakeup time.
     private PriorityQueue<SleepingProcesses> sleepingProcesses;
 
-    // HashMap to map pid to PCB for fast lookup
-    private HashMap<Integer, PCB> processMap = new HashMap<>();
+    // Time the pending wakeup timer fires at, or Long.MAX_VALUE if none is armed.
+    private long armedWakeupTime = Long.MAX_VALUE;
+
+    // Map from pid to PCB for fast lookup. Concurrent because senders look up receivers from their own thread.
+    private ConcurrentHashMap<Integer, PCB> processMap = new ConcurrentHashMap<>();
+
+    // Index from process name to the PIDs of every live process with that name, in creation (PID) order.
+    // Kept in step with processMap so name lookups do not scan all processes.
+    private HashMap<String, TreeMap<Integer, PCB>> processesByName = new HashMap<>();
 
     private Clock clock = Clock.systemUTC();
     private Timer timer = new Timer();
 
-    // Reference to the currently running process.
-    public PCB runningProcess = null;
+    // The simulated CPUs. Each has its own running process, TLB and timer quantum.
+    private final CPU[] cpus;
+
+    // CPU whose process made the system call the kernel is currently handling.
+    private CPU currentCpu;
 
     // Reference to kernel for device cleanup calls.
     private Kernel kernel;
 
+    // Returns the process running on the CPU that made the current system call.
     public PCB getCurrentlyRunning() {
-        return runningProcess;
+        return currentCpu.runningProcess;
+    }
+
+    // Returns the PCB of the given process if it is running on a CPU, otherwise null.
+    // Used by OS to find out whether the calling thread is a scheduled process.
+    public PCB getRunningProcess(Process p) {
+        PCB running = cpus[p.cpu].runningProcess;
+        return (running != null && running.userlandProcess == p) ? running : null;
+    }
+
+    // Makes the CPU of the calling process current for the system call being handled.
+    // Calls that do not come from a scheduled process (e.g. OS.Startup) are handled on CPU 0.
+    void setCurrentCpu(PCB caller) {
+        currentCpu = (caller != null) ? cpus[caller.userlandProcess.cpu] : cpus[0];
+    }
+
+    // Returns the CPU that made the current system call.
+    CPU getCurrentCpu() {
+        return currentCpu;
+    }
+
+    // Returns all CPUs
+    CPU[] getCpus() {
+        return cpus;
+    }
+
+    // True if the process is currently running on any CPU.
+    public boolean isRunning(PCB pcb) {
+        return cpus[pcb.userlandProcess.cpu].runningProcess == pcb;
     }
 
+    // Removes a process from the ready queue it is waiting in, if any. O(1) through the PCB's queue links.
     public void removeProcess(PCB p) {
-        OS.PriorityType priority = p.getPriority();
-        switch (priority) {
-            case realtime -> realTimeQueue.remove(p);
-            case interactive -> interactiveQueue.remove(p);
-            case background -> backgroundQueue.remove(p);
+        ReadyQueue queue = p.readyQueue;
+        if (queue != null && queue.remove(p)) {
+            readyCount[queue.priority.ordinal()]--;
         }
         // Remove process from the process map if not waiting on a message
         if (!p.waitingForMessage) {
             processMap.remove(p.pid);
+            TreeMap<Integer, PCB> sameName = processesByName.get(p.name);
+            if (sameName != null) {
+                sameName.remove(p.pid);
+                if (sameName.isEmpty()) {
+                    processesByName.remove(p.name);
+                }
+            }
         }
 
     }
@@ -47,14 +97,16 @@ public class Scheduler {
 
     public void switchAndStartProcess() {
         switchProcess();
-        runningProcess.userlandProcess.start();
+        getCurrentlyRunning().userlandProcess.start();
     }
 
 
     // Private class to track sleeping processes with wakeup time.
+    // Also used for the deadline of a WaitForMessage or Select with a timeout (timeout = true).
     private static class SleepingProcesses {
         PCB process;
         long wakeUpTime;
+        boolean timeout;
 
         SleepingProcesses(PCB process, long wakeUpTime) {
             this.process = process;
@@ -62,20 +114,34 @@ public class Scheduler {
         }
     }
 
-    // Scheduler constructor.
+    // Scheduler constructor with a single CPU.
     public Scheduler() {
+        this(DEFAULT_CPUS);
+    }
+
+    // Scheduler constructor for the given number of simulated CPUs.
+    public Scheduler(int cpuCount) {
         // System.out.println("Scheduler: Scheduler constructor called");
         sleepingProcesses = new PriorityQueue<>(Comparator.comparingLong(s -> s.wakeUpTime));
-        // Set up a periodic interrupt every 250ms.
-        TimerTask interrupt = new TimerTask() {
-            public void run() {
-                if (runningProcess != null) {
-                    runningProcess.incrementTimeoutCount();
-                    runningProcess.requestStop();
+        cpus = new CPU[cpuCount];
+        for (int i = 0; i < cpuCount; i++) {
+            cpus[i] = new CPU(i);
+        }
+        currentCpu = cpus[0];
+        // Set up a periodic interrupt every 250ms on each CPU.
+        // The quanta are staggered so the CPUs are not all interrupted at the same moment.
+        for (CPU cpu : cpus) {
+            TimerTask interrupt = new TimerTask() {
+                public void run() {
+                    PCB running = cpu.runningProcess;
+                    if (running != null) {
+                        running.incrementTimeoutCount();
+                        running.requestStop();
+                    }
                 }
-            }
-        };
-        timer.schedule(interrupt, 250, 250);
+            };
+            timer.schedule(interrupt, QUANTUM + (long) QUANTUM * cpu.id / cpuCount, QUANTUM);
+        }
         // System.out.println("Scheduler: Timer task scheduled");
     }
 
@@ -90,152 +156,233 @@ public class Scheduler {
 
         PCB newProcess = new PCB(up, p);
 
-        // Add new process to the process map
+        // Add new process to the process map and the name index
         processMap.put(newProcess.pid, newProcess);
+        processesByName.computeIfAbsent(newProcess.name, n -> new TreeMap<>()).put(newProcess.pid, newProcess);
+
+        // An IdleProcess becomes the fallback of the first CPU without one and never enters the ready queues
+        if (up instanceof IdleProcess) {
+            CPU cpu = findCpuWithoutIdle();
+            if (cpu != null) {
+                cpu.idleProcess = newProcess;
+                up.cpu = cpu.id;
+                if (cpu.runningProcess == null) {
+                    dispatch(cpu, newProcess);
+                } else {
+                    newProcess.startThread();
+                }
+                return newProcess.pid;
+            }
+        }
 
-        // If no process is currently running, start the created process otherwise it is added to the queue.
-        if (runningProcess == null) {
-            System.out.println("Scheduler.createProcess: No running process, " + up.getClass().getSimpleName() + " will run next");
-            runningProcess = newProcess;
+        // If a CPU has no process running, the created process runs there next, otherwise it is added to the queue.
+        CPU emptyCpu = findEmptyCpu();
+        if (emptyCpu != null) {
+            System.out.println("Scheduler.createProcess: No running process on CPU " + emptyCpu.id + ", " + up.getClass().getSimpleName() + " will run next");
+            dispatch(emptyCpu, newProcess);
         } else {
+            // New processes are queued on the CPU with the least waiting work
+            up.cpu = leastLoadedCpu().id;
             addProcessToQueue(newProcess, p);
             newProcess.startThread(); // The thread is now alive but won't run immediately.
+            kickIdleCpu();
         }
         return newProcess.pid;
     }
 
+    // Switches the process on the CPU that made the current system call.
     public void switchProcess() {
+        CPU cpu = currentCpu;
+        PCB current = cpu.runningProcess;
 
         // If there is a currently running process, check if it should be re-queued.
-        if (runningProcess != null && !runningProcess.isDone() && !runningProcess.waitingForMessage) {
-            if (!runningProcess.userlandProcess.isDone()) {
-                addProcessToQueue(runningProcess);
+        // The idle process is not queued, the CPU falls back to it when nothing else is ready.
+        if (current != null && current != cpu.idleProcess && !current.isDone() && !current.waitingForMessage && !current.blocked) {
+            if (!current.userlandProcess.isDone()) {
+                addProcessToQueue(current);
             }
         }
 
-        // Clear TLB on Task Switch
-        System.out.println("Scheduler.switchProcess: Clearing TLB.");
-        for (int i = 0; i < Hardware.TLB.length; i++) {
-            Hardware.TLB[i][0] = Hardware.INVALID_PAGE; // Invalidate virtual page number mapping
-            Hardware.TLB[i][1] = Hardware.INVALID_PAGE; // Optionally clear physical page too
-        }
-
+        // The TLB is not flushed: its entries are tagged with the owning process's pid (see TLB)
 
         // Select the next process to run.
-        runningProcess = selectProcess();
+        PCB next = selectProcess();
 
         // *** ADD NULL CHECK HERE ***
-        if (runningProcess != null) {
-            if (runningProcess.waitingForMessage) {
-                runningProcess.waitingForMessage = false;
-                OS.retVal = runningProcess.messageQueue.removeFirst();
-            }
-            System.out.println("Scheduler.switchProcess: Selected " + runningProcess.userlandProcess.getClass().getSimpleName());
+        if (next != null) {
+            System.out.println("Scheduler.switchProcess: Selected " + next.userlandProcess.getClass().getSimpleName());
         } else {
             // Handle case where no process is ready to run
             System.out.println("Scheduler.switchProcess: No runnable process selected!");
-            OS.retVal = null; // Ensure retVal is cleared if nothing ran
         }
 
 
-        if (runningProcess == null) {
-            // Fallback: attempt to poll any process from the background queue.
-            System.out.println("Scheduler.switchProcess: No process selected by selectProcess(), attempting fallback.");
-            runningProcess = pollNext(backgroundQueue);
+        if (next == null) {
+            // Fallback: run this CPU's idle process.
+            System.out.println("Scheduler.switchProcess: No process selected by selectProcess(), falling back to the idle process.");
+            next = cpu.idleProcess;
         }
-        if (runningProcess != null) {
-            System.out.println("Scheduler.switchProcess: Selected " + runningProcess.userlandProcess.getClass().getSimpleName());
+        dispatch(cpu, next);
+        if (next != null) {
+            System.out.println("Scheduler.switchProcess: Selected " + next.userlandProcess.getClass().getSimpleName() + " on CPU " + cpu.id);
         } else {
             System.out.println("Scheduler.switchProcess: No process available to run!");
         }
+
+        // Other CPUs sitting in the idle process can pick up any work that is still queued
+        if (hasAnyReady()) {
+            kickIdleCpu();
+        }
+    }
+
+    // Puts a process on a CPU. The kernel starts it once the current system call is finished.
+    private void dispatch(CPU cpu, PCB pcb) {
+        cpu.runningProcess = pcb;
+        if (pcb == null) {
+            return;
+        }
+        pcb.userlandProcess.cpu = cpu.id;
+        cpu.needsStart = true;
+    }
+
+    // Returns the CPU with the fewest processes waiting in its ready queues.
+    private CPU leastLoadedCpu() {
+        CPU best = cpus[0];
+        for (CPU cpu : cpus) {
+            if (cpu.queuedCount() < best.queuedCount()) {
+                best = cpu;
+            }
+        }
+        return best;
+    }
+
+    // Returns a CPU that has no process to run, or null if all CPUs are busy.
+    private CPU findEmptyCpu() {
+        for (CPU cpu : cpus) {
+            if (cpu.runningProcess == null) {
+                return cpu;
+            }
+        }
+        return null;
+    }
+
+    // Returns a CPU that has no idle process yet, or null if every CPU has one.
+    private CPU findCpuWithoutIdle() {
+        for (CPU cpu : cpus) {
+            if (cpu.idleProcess == null) {
+                return cpu;
+            }
+        }
+        return null;
+    }
+
+    // Asks one CPU that is running the idle process to give up its quantum so it picks up newly ready work.
+    private void kickIdleCpu() {
+        for (CPU cpu : cpus) {
+            PCB running = cpu.runningProcess;
+            if (running != null && running == cpu.idleProcess && !running.userlandProcess.isExpired) {
+                running.requestStop();
+                return;
+            }
+        }
     }
 
     // Helper to add a process to a queue based on its priority.
+    // The process is queued on the CPU it last ran on (or was placed on), keeping it close to its cache.
     private void addProcessToQueue(PCB process, OS.PriorityType p) {
-        switch (p) {
-            case realtime -> realTimeQueue.add(process);
-            case interactive -> interactiveQueue.add(process);
-            case background -> backgroundQueue.add(process);
-        }
+        cpus[process.userlandProcess.cpu].queue(p).addLast(process);
+        readyCount[p.ordinal()]++;
 //        System.out.println("Scheduler.createProcess: Adding process "
 //                + process.userlandProcess.getClass().getSimpleName() + " to queue: " + p);
     }
 
     // Helper to add process to queue using its current priority.
     private void addProcessToQueue(PCB process) {
-        switch (process.getPriority()) {
-            case realtime -> realTimeQueue.add(process);
-            case interactive -> interactiveQueue.add(process);
-            case background -> backgroundQueue.add(process);
-        }
+        addProcessToQueue(process, process.getPriority());
         System.out.println("Scheduler.createProcess: Adding process "
                 + process.userlandProcess.getClass().getSimpleName() + " to queue: " + process.getPriority());
     }
 
-    // Select next process using a probabilistic model.
+    // Select next process for the current CPU using a probabilistic model.
+    // A priority level counts as available if any CPU has work queued at that level; the CPU
+    // takes it from its own queue first and steals from another CPU only when its own queue is empty.
+    // Returns null when nothing is ready, the caller then falls back to the CPU's idle process.
     private PCB selectProcess() {
         wakeupProcesses(); // wake any sleeping processes first
+        CPU cpu = currentCpu;
         Random random = new Random();
         double randomDouble = random.nextDouble();
+        boolean realTimeReady = hasReady(OS.PriorityType.realtime);
+        boolean interactiveReady = hasReady(OS.PriorityType.interactive);
 
-        // If there is at least one non-idle process available...
-        if (!realTimeQueue.isEmpty() || !interactiveQueue.isEmpty() || hasNonIdleBackground()) {
+        // If there is at least one process available...
+        if (hasAnyReady()) {
             // Prefer real-time processes (60% chance)
-            if (!realTimeQueue.isEmpty() && randomDouble < 0.6) {
-                return pollNext(realTimeQueue);
+            if (realTimeReady && randomDouble < 0.6) {
+                return take(cpu, OS.PriorityType.realtime);
             }
             // Otherwise, try interactive processes (next 30%)
-            else if (!interactiveQueue.isEmpty() && randomDouble < 0.9) {
-                return pollNext(interactiveQueue);
+            else if (interactiveReady && randomDouble < 0.9) {
+                return take(cpu, OS.PriorityType.interactive);
             }
-            // Otherwise, check background—but only non-idle processes!
+            // Otherwise, check background
             else {
-                PCB pcb = pollNonIdleBackground();
+                PCB pcb = take(cpu, OS.PriorityType.background);
                 if (pcb != null) {
                     return pcb;
                 }
                 // Fallback: if background had no non-idle, try real-time or interactive if available.
-                if (!realTimeQueue.isEmpty()) {
-                    return pollNext(realTimeQueue);
+                if (hasReady(OS.PriorityType.realtime)) {
+                    return take(cpu, OS.PriorityType.realtime);
                 }
-                if (!interactiveQueue.isEmpty()) {
-                    return pollNext(interactiveQueue);
+                if (hasReady(OS.PriorityType.interactive)) {
+                    return take(cpu, OS.PriorityType.interactive);
                 }
             }
         }
-        // No non-idle process exists in any queue, so allow IdleProcess.
-        if (!realTimeQueue.isEmpty()) return pollNext(realTimeQueue);
-        if (!interactiveQueue.isEmpty()) return pollNext(interactiveQueue);
-        if (!backgroundQueue.isEmpty()) return pollNext(backgroundQueue);
+        // Whatever is left, in priority order
+        if (hasReady(OS.PriorityType.realtime)) return take(cpu, OS.PriorityType.realtime);
+        if (hasReady(OS.PriorityType.interactive)) return take(cpu, OS.PriorityType.interactive);
+        if (hasReady(OS.PriorityType.background)) return take(cpu, OS.PriorityType.background);
         return null;
     }
 
-    // Helper method: checks if backgroundQueue has any non-idle processes.
-    private boolean hasNonIdleBackground() {
-        for (PCB pcb : backgroundQueue) {
-            if (!(pcb.userlandProcess instanceof IdleProcess) && !pcb.isDone()) {
-                return true;
-            }
-        }
-        return false;
+    // True if any CPU has a process queued at the given priority
+    private boolean hasReady(OS.PriorityType p) {
+        return readyCount[p.ordinal()] > 0;
     }
 
-    // Helper method: polls the first non-idle process from the background queue.
-    private PCB pollNonIdleBackground() {
-        for (Iterator<PCB> it = backgroundQueue.iterator(); it.hasNext(); ) {
-            PCB pcb = it.next();
-            if (!(pcb.userlandProcess instanceof IdleProcess) && !pcb.isDone()) {
-                it.remove();
-                return pcb;
+    // True if any CPU has a process queued at any priority
+    private boolean hasAnyReady() {
+        return hasReady(OS.PriorityType.realtime) || hasReady(OS.PriorityType.interactive) || hasReady(OS.PriorityType.background);
+    }
+
+    // Takes the next ready process of a priority level for the CPU: from the head of its own queue,
+    // otherwise stolen from the tail of the queue of the CPU with the most work at that level.
+    private PCB take(CPU cpu, OS.PriorityType p) {
+        PCB pcb = pollNext(cpu.queue(p), p, false);
+        while (pcb == null && hasReady(p)) {
+            CPU victim = null;
+            for (CPU other : cpus) {
+                if (other != cpu && !other.queue(p).isEmpty()
+                        && (victim == null || other.queue(p).size() > victim.queue(p).size())) {
+                    victim = other;
+                }
+            }
+            if (victim == null) {
+                break;
             }
+            pcb = pollNext(victim.queue(p), p, true);
+            // if (pcb != null) System.out.println("Scheduler.take: CPU " + cpu.id + " stole " + pcb.name + " from CPU " + victim.id);
         }
-        return null;
+        return pcb;
     }
 
-    // Poll a queue until a process that is not done is found.
-    private PCB pollNext(LinkedList<PCB> queue) {
+    // Poll a queue (from the head, or from the tail when stealing) until a process that is not done is found.
+    private PCB pollNext(ReadyQueue queue, OS.PriorityType p, boolean fromTail) {
         while (!queue.isEmpty()) {
-            PCB pcb = queue.poll();
+            PCB pcb = fromTail ? queue.pollLast() : queue.pollFirst();
+            readyCount[p.ordinal()]--;
             if (!pcb.isDone()) {
                 return pcb;
             } else {
@@ -246,70 +393,116 @@ public class Scheduler {
         return null;
     }
 
+    // Moves every sleeping process whose wakeup time has passed to its ready queue.
+    // Only the expired heads of the priority queue are popped, the rest of the queue is not touched.
     private void wakeupProcesses() {
         long currentTime = clock.millis();
-        // Temporary list for processes not ready yet.
-        List<SleepingProcesses> notReady = new ArrayList<>();
+        while (!sleepingProcesses.isEmpty() && sleepingProcesses.peek().wakeUpTime <= currentTime) {
+            SleepingProcesses expired = sleepingProcesses.poll();
+            if (expired.timeout) {
+                // A wait that already ended leaves its deadline behind, it is dropped here instead of being searched for
+                PCB pcb = expired.process;
+                if (pcb.waitingForMessage && pcb.waitDeadline == expired.wakeUpTime) {
+                    kernel.waitTimedOut(pcb);
+                }
+                continue;
+            }
+            addProcessToQueue(expired.process);
+            kickIdleCpu();
+        }
+    }
 
-        // Iterate over all sleeping processes.
-        for (SleepingProcesses sp : sleepingProcesses) {
-            if (sp.wakeUpTime <= currentTime) {
-                addProcessToQueue(sp.process);
-            } else {
-                notReady.add(sp);
+    // Called by the kernel when the wakeup timer fires. Wakes the expired sleepers and arms the timer
+    // for the next one, so sleepers are woken on time even if no process switch happens.
+    void timerWakeup() {
+        armedWakeupTime = Long.MAX_VALUE;
+        wakeupProcesses();
+        if (!sleepingProcesses.isEmpty()) {
+            armWakeupTimer(sleepingProcesses.peek().wakeUpTime);
+        }
+    }
+
+    // Arms a one-shot timer that asks the kernel to wake sleepers at the given time,
+    // unless a timer for an earlier time is already armed.
+    private void armWakeupTimer(long wakeUpTime) {
+        if (wakeUpTime >= armedWakeupTime) {
+            return;
+        }
+        armedWakeupTime = wakeUpTime;
+        // The timer thread must not touch scheduler state itself, it hands the work to the kernel thread.
+        TimerTask wakeup = new TimerTask() {
+            public void run() {
+                kernel.requestTimerWakeup();
             }
+        };
+        timer.schedule(wakeup, Math.max(0, wakeUpTime - clock.millis()));
+    }
+
+    // Blocks the process running on the current CPU and switches to the next one.
+    // The blocked process is not requeued until wakeUpProcess is called for it.
+    public void block() {
+        PCB current = currentCpu.runningProcess;
+        if (current != null) {
+            current.blocked = true;
         }
+        switchProcess();
+    }
 
-        // Clear the priority queue and re-add only the processes that are not ready.
-        sleepingProcesses.clear();
-        sleepingProcesses.addAll(notReady);
+    // Sets a deadline for the WaitForMessage or Select the running process is about to block in.
+    // When it passes while the process is still waiting, the kernel ends the wait with a timeout.
+    public void addTimeout(PCB process, int mills) {
+        process.waitDeadline = clock.millis() + mills;
+        SleepingProcesses deadline = new SleepingProcesses(process, process.waitDeadline);
+        deadline.timeout = true;
+        sleepingProcesses.add(deadline);
+        armWakeupTimer(process.waitDeadline);
     }
 
-    // Wakes up process that are waiting for messages
+    // Wakes up process that are waiting for messages or blocked in the kernel
     public void wakeUpProcess(PCB process) {
+        process.blocked = false;
         addProcessToQueue(process);
+        kickIdleCpu();
         // System.out.println("Scheduler: Process " + process.pid + " has been woken up from message waiting.");
     }
 
 
-    // Put the running process to sleep.
+    // Put the running process to sleep and run the next process on its CPU.
     public void sleep(int mills) {
-        if (runningProcess != null) {
-            runningProcess.wakeupTime = clock.millis() + mills;
-            sleepingProcesses.add(new SleepingProcesses(runningProcess, runningProcess.wakeupTime));
-            runningProcess = selectProcess();
+        CPU cpu = currentCpu;
+        PCB current = cpu.runningProcess;
+        if (current != null) {
+            current.wakeupTime = clock.millis() + mills;
+            sleepingProcesses.add(new SleepingProcesses(current, current.wakeupTime));
+            armWakeupTimer(current.wakeupTime);
+            PCB next = selectProcess();
+            dispatch(cpu, next != null ? next : cpu.idleProcess);
         }
     }
 
-    // Helper method to find a process by its name
+    // Returns the PID of the oldest live process with the given name, or -1 if there is none
     public int getPidByName(String name) {
-        for (PCB pcb : processMap.values()) {
-            if (pcb.name.equals(name)) {
-                return pcb.pid;
-            }
-        }
-        return -1; // if not found
-    }
-
-    /*
-     * Selects a random process from the list of known processes
-     * Used by the Kernel's page swapping mechanism in order to choose a victim process
-     * Returns a randomly selected PCB
-     */
-    public PCB getRandomProcess() {
-        // Get a list of potential victim processes, exclude currently running process and the idle process
-        List<PCB> potentialVictims = new ArrayList<>();
-        for (PCB pcb : processMap.values()) {
-            if (pcb != runningProcess && !(pcb.userlandProcess instanceof IdleProcess)) {
-                potentialVictims.add(pcb);
-            }
+        TreeMap<Integer, PCB> sameName = processesByName.get(name);
+        return (sameName != null) ? sameName.firstKey() : -1;
+    }
+
+    // Returns the PID of the most recently created live process with the given name, or -1 if there is none
+    public int getNewestPidByName(String name) {
+        TreeMap<Integer, PCB> sameName = processesByName.get(name);
+        return (sameName != null) ? sameName.lastKey() : -1;
+    }
+
+    // Returns the PIDs of all live processes with the given name, oldest first
+    public int[] getPidsByName(String name) {
+        TreeMap<Integer, PCB> sameName = processesByName.get(name);
+        if (sameName == null) {
+            return new int[0];
         }
-        if (potentialVictims.isEmpty()) {
-            return null; // no processes available
+        int[] pids = new int[sameName.size()];
+        int i = 0;
+        for (int pid : sameName.keySet()) {
+            pids[i++] = pid;
         }
-        // Choose a random process from the list of potential victim processes
-        Random random = new Random();
-        int randomPid = random.nextInt(potentialVictims.size());
-        return potentialVictims.get(randomPid);
+        return pids;
     }
 }
@@ -0,0 +1,104 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+
+/*
+ * The swap file, memory-mapped so pages move straight between a physical frame and their slot in the file with one
+ * copy, without a byte[] in between and without a read or write call per page. The operating system writes the
+ * mapped pages to disk in the background.
+ * The file is mapped in segments of SEGMENT_PAGES slots. Writing a slot past the end maps another segment, which
+ * extends the file; shrink cuts the file back to the segments still needed.
+ * Only the kernel thread uses the swap file.
+ */
+public class SwapFile {
+
+    private static final int PAGE_SIZE = 1024;
+    // Slots per mapped segment, 1 MB of file
+    private static final int SEGMENT_PAGES = 1024;
+    private static final long SEGMENT_SIZE = (long) SEGMENT_PAGES * PAGE_SIZE;
+
+    private final FileChannel channel;
+    private final ArrayList<MappedByteBuffer> segments = new ArrayList<>();
+
+    private SwapFile(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    // Opens the swap file, creating it if needed. Whatever a previous run left in it is discarded.
+    public static SwapFile open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        channel.truncate(0);
+        return new SwapFile(channel);
+    }
+
+    // Copies a slot into the physical frame at physicalAddress. Returns false if the slot was never written.
+    public boolean readPage(int slot, PhysicalMemory memory, long physicalAddress) {
+        if (slot < 0 || slot / SEGMENT_PAGES >= segments.size()) {
+            return false;
+        }
+        memory.write(physicalAddress, segments.get(slot / SEGMENT_PAGES), offset(slot), PAGE_SIZE);
+        return true;
+    }
+
+    // Copies the physical frame at physicalAddress into a slot, growing the file if the slot is past its end.
+    // Returns false if the file could not be grown.
+    public boolean writePage(int slot, PhysicalMemory memory, long physicalAddress) {
+        if (!mapSlot(slot)) {
+            return false;
+        }
+        memory.read(physicalAddress, segments.get(slot / SEGMENT_PAGES), offset(slot), PAGE_SIZE);
+        return true;
+    }
+
+    // Copies a page held in a byte array into a slot, growing the file if the slot is past its end.
+    // Returns false if the file could not be grown.
+    public boolean writePage(int slot, byte[] data) {
+        if (!mapSlot(slot)) {
+            return false;
+        }
+        segments.get(slot / SEGMENT_PAGES).put(offset(slot), data, 0, PAGE_SIZE);
+        return true;
+    }
+
+    // Unmaps the segments past the first slotCount slots and cuts the file after them.
+    // Slots past slotCount must not be read again before they are written.
+    public void shrink(int slotCount) {
+        int keep = (slotCount + SEGMENT_PAGES - 1) / SEGMENT_PAGES;
+        if (keep >= segments.size()) {
+            return;
+        }
+        // Nothing touches the dropped buffers again, so cutting the file under them is safe
+        segments.subList(keep, segments.size()).clear();
+        try {
+            channel.truncate(keep * SEGMENT_SIZE);
+        } catch (IOException e) {
+            System.err.println("SwapFile.shrink: ERROR: Could not truncate swap file: " + e.getMessage());
+        }
+    }
+
+    // Length of the file in bytes
+    public long length() {
+        return segments.size() * SEGMENT_SIZE;
+    }
+
+    // Maps segments up to the one holding the slot. Mapping past the end of the file extends it.
+    private boolean mapSlot(int slot) {
+        try {
+            while (slot / SEGMENT_PAGES >= segments.size()) {
+                segments.add(channel.map(FileChannel.MapMode.READ_WRITE, segments.size() * SEGMENT_SIZE, SEGMENT_SIZE));
+            }
+            return true;
+        } catch (IOException e) {
+            System.err.println("SwapFile.mapSlot: ERROR: Could not grow swap file for slot " + slot + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    // Byte offset of a slot in its segment
+    private static int offset(int slot) {
+        return (slot % SEGMENT_PAGES) * PAGE_SIZE;
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Submission/completion ring for batching device and memory system calls.
+ * A userland process queues several operations (for example seek + write + seek + read) and hands the whole
+ * ring to the kernel with OS.Submit(), which processes every entry in one kernel entry instead of one per call.
+ * Completions are posted in submission order into each entry's result slot.
+ * The entries are allocated once and reused every time the ring is cleared.
+ */
+public class SyscallRing {
+
+    // Preallocated request slots, reused between submissions
+    private final SystemCall[] entries;
+
+    // Number of operations queued since the ring was last cleared
+    private int count;
+
+    // Number of operations the kernel completed in the last submission
+    int completed;
+
+    public SyscallRing(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Ring capacity must be positive");
+        }
+        entries = new SystemCall[capacity];
+        for (int i = 0; i < capacity; i++) {
+            entries[i] = new SystemCall();
+        }
+    }
+
+    // Takes the next free slot. Throws if the ring is full.
+    private SystemCall next(OS.CallType type) {
+        if (count == entries.length) {
+            throw new IllegalStateException("SyscallRing is full (" + entries.length + " entries)");
+        }
+        SystemCall entry = entries[count];
+        entry.reset(type);
+        return entry;
+    }
+
+    // ***** Queuing operations. Each returns the index of the entry, used to look up its completion. *****
+
+    public int open(String s) {
+        SystemCall entry = next(OS.CallType.Open);
+        entry.ref = s;
+        return count++;
+    }
+
+    public int close(int id) {
+        SystemCall entry = next(OS.CallType.Close);
+        entry.arg0 = id;
+        return count++;
+    }
+
+    public int read(int id, int size) {
+        SystemCall entry = next(OS.CallType.Read);
+        entry.arg0 = id;
+        entry.arg1 = size;
+        return count++;
+    }
+
+    public int seek(int id, int to) {
+        SystemCall entry = next(OS.CallType.Seek);
+        entry.arg0 = id;
+        entry.arg1 = to;
+        return count++;
+    }
+
+    public int write(int id, byte[] data) {
+        SystemCall entry = next(OS.CallType.Write);
+        entry.arg0 = id;
+        entry.ref = data;
+        return count++;
+    }
+
+    public int getMapping(int virtualPageNum) {
+        SystemCall entry = next(OS.CallType.GetMapping);
+        entry.arg0 = virtualPageNum;
+        entry.arg1 = 1; // map the page for writing, like OS.GetMapping
+        return count++;
+    }
+
+    public int allocateMemory(int size) {
+        SystemCall entry = next(OS.CallType.AllocateMemory);
+        entry.arg0 = size;
+        return count++;
+    }
+
+    public int freeMemory(int pointer, int size) {
+        SystemCall entry = next(OS.CallType.FreeMemory);
+        entry.arg0 = pointer;
+        entry.arg1 = size;
+        return count++;
+    }
+
+    // ***** Completions *****
+
+    // Numeric result of an entry (device id, bytes written, start address, 1/0 for FreeMemory, ...)
+    public int result(int index) {
+        checkCompleted(index);
+        return entries[index].intResult;
+    }
+
+    // Data returned by a Read entry
+    public byte[] data(int index) {
+        checkCompleted(index);
+        return (byte[]) entries[index].refResult;
+    }
+
+    // Number of entries the kernel completed. Smaller than size() if the process was terminated mid-batch.
+    public int completed() {
+        return completed;
+    }
+
+    // Number of queued entries
+    public int size() {
+        return count;
+    }
+
+    // Empties the ring so it can be filled again
+    public void clear() {
+        count = 0;
+        completed = 0;
+    }
+
+    // Entry the kernel processes at the given index
+    SystemCall entry(int index) {
+        return entries[index];
+    }
+
+    private void checkCompleted(int index) {
+        if (index < 0 || index >= completed) {
+            throw new IndexOutOfBoundsException("Entry " + index + " has not been completed");
+        }
+    }
+}
@@ -0,0 +1,66 @@
+import java.util.concurrent.Semaphore;
+
+/*
+ * A single system call request passed from userland to the kernel.
+ * Holds the call type, its arguments and a result slot the caller blocks on until the kernel completes it.
+ * Primitive arguments and results are kept in int fields so the common calls do not box anything.
+ * Each calling thread has at most one call in flight, so OS reuses one SystemCall object per thread.
+ */
+public class SystemCall {
+
+    // Which system call this is
+    OS.CallType type;
+
+    // Primitive arguments (device id, size, position, page number, pid, ...)
+    int arg0;
+    int arg1;
+    int arg2;
+
+    // Reference argument (file name, data buffer, message, userland process, ...)
+    Object ref;
+
+    // Priority for CreateProcess
+    OS.PriorityType priority;
+
+    // Process that made the call, or null when the call does not come from a scheduled process (e.g. OS.Startup)
+    PCB caller;
+
+    // Result slot. Calls returning a number use intResult, calls returning an object use refResult.
+    int intResult;
+    Object refResult;
+
+    // Released by the kernel when the call has been handled
+    private final Semaphore done = new Semaphore(0);
+
+    // Prepares this object for a new call
+    void reset(OS.CallType type) {
+        this.type = type;
+        this.arg0 = 0;
+        this.arg1 = 0;
+        this.arg2 = 0;
+        this.ref = null;
+        this.priority = null;
+        this.caller = null;
+        this.intResult = 0;
+        this.refResult = null;
+        // Entries of a SyscallRing are completed without anyone waiting on them, drop those permits
+        done.drainPermits();
+    }
+
+    // Called by the kernel thread when the call has finished with a numeric result. Wakes the waiting caller.
+    void complete(int result) {
+        this.intResult = result;
+        done.release();
+    }
+
+    // Called by the kernel thread when the call has finished with an object result. Wakes the waiting caller.
+    void complete(Object result) {
+        this.refResult = result;
+        done.release();
+    }
+
+    // Blocks the caller until the kernel has completed the call
+    void await() {
+        done.acquireUninterruptibly();
+    }
+}
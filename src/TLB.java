@@ -0,0 +1,107 @@
+/*
+ * Translation lookaside buffer of one simulated CPU.
+ * N-way set associative: a virtual page can only be cached in the ways of one set, chosen from the page number
+ * and address space, and the least recently used way of the set is replaced on a miss.
+ * Every entry is tagged with an address space id (the owning process's pid), so entries of different processes
+ * can stay cached side by side and a task switch does not need to flush the TLB.
+ * An entry caches the page table entry itself, so the hardware can set its referenced and dirty bits on access.
+ * The running process looks entries up; the kernel fills and invalidates them.
+ */
+public class TLB {
+
+    private final int sets;
+    private final int ways;
+
+    // Entry i of set s is at index s * ways + i
+    private final int[] asid;
+    private final int[] virtualPage;
+    private final VirtualToPhysicalMapping[] mapping;
+    // Value of useClock when the entry was last filled or hit, the smallest one in a set is replaced first
+    private final long[] lastUsed;
+    private long useClock;
+
+    public TLB(int sets, int ways) {
+        if (sets <= 0 || ways <= 0) {
+            throw new IllegalArgumentException("TLB needs at least one set and one way");
+        }
+        this.sets = sets;
+        this.ways = ways;
+        asid = new int[sets * ways];
+        virtualPage = new int[sets * ways];
+        mapping = new VirtualToPhysicalMapping[sets * ways];
+        lastUsed = new long[sets * ways];
+        clear();
+    }
+
+    // Returns the page table entry cached for the virtual page of the address space, or null on a miss
+    public VirtualToPhysicalMapping lookup(int addressSpace, int virtualPageNum) {
+        int first = firstEntry(addressSpace, virtualPageNum);
+        for (int i = first; i < first + ways; i++) {
+            if (virtualPage[i] == virtualPageNum && asid[i] == addressSpace) {
+                lastUsed[i] = ++useClock;
+                return mapping[i];
+            }
+        }
+        return null;
+    }
+
+    // Caches a translation, replacing an existing entry for the same page, an empty way or the least recently used way
+    public void insert(int addressSpace, int virtualPageNum, VirtualToPhysicalMapping entry) {
+        int first = firstEntry(addressSpace, virtualPageNum);
+        int victim = first;
+        for (int i = first; i < first + ways; i++) {
+            if (virtualPage[i] == virtualPageNum && asid[i] == addressSpace) {
+                victim = i;
+                break;
+            }
+            if (lastUsed[i] < lastUsed[victim]) {
+                victim = i;
+            }
+        }
+        // Invalidate first so a concurrent lookup never sees the new page number with the old entry
+        virtualPage[victim] = Hardware.INVALID_PAGE;
+        asid[victim] = addressSpace;
+        mapping[victim] = entry;
+        virtualPage[victim] = virtualPageNum;
+        lastUsed[victim] = ++useClock;
+    }
+
+    // Drops the translation of one virtual page of an address space, if cached
+    public void invalidate(int addressSpace, int virtualPageNum) {
+        int first = firstEntry(addressSpace, virtualPageNum);
+        for (int i = first; i < first + ways; i++) {
+            if (virtualPage[i] == virtualPageNum && asid[i] == addressSpace) {
+                invalidateEntry(i);
+            }
+        }
+    }
+
+    // Drops every translation of an address space (e.g. when its process exits)
+    public void invalidateAll(int addressSpace) {
+        for (int i = 0; i < asid.length; i++) {
+            if (asid[i] == addressSpace) {
+                invalidateEntry(i);
+            }
+        }
+    }
+
+    // Drops every translation
+    public void clear() {
+        for (int i = 0; i < asid.length; i++) {
+            invalidateEntry(i);
+        }
+    }
+
+    private void invalidateEntry(int i) {
+        virtualPage[i] = Hardware.INVALID_PAGE;
+        mapping[i] = null;
+        asid[i] = Hardware.INVALID_PAGE;
+        lastUsed[i] = 0; // empty ways are replaced first
+    }
+
+    // Index of the first way of the set the page maps to. The address space is mixed in so that processes using the
+    // same virtual pages do not all compete for the same sets.
+    private int firstEntry(int addressSpace, int virtualPageNum) {
+        return Math.floorMod(virtualPageNum + addressSpace * 7, sets) * ways;
+    }
+}
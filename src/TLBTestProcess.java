@@ -0,0 +1,82 @@
+/**
+ * TLBTestProcess tests the ASID-tagged TLB (see TLB).
+ * Two instances use the same virtual pages, each filled with its own identifier, and take turns on the CPU. Each
+ * checks that it always reads its own data, and that its TLB entry for a page is still cached after the other
+ * process has run on the same CPU, since a process switch does not flush the TLB.
+ * Instance 'A' also checks a small TLB directly: two address spaces caching the same virtual page side by side,
+ * least recently used replacement within a set, and dropping one address space with invalidateAll, as the kernel
+ * does when a process exits. It also checks that Hardware.configureTLB rejects a TLB without sets.
+ */
+public class TLBTestProcess extends UserlandProcess {
+
+    private static final int PAGE_SIZE = 1024;
+    private static final int PAGES = 4;
+    private static final int ROUNDS = 3;
+
+    // Identifier written to every page, also the role printed with the results
+    private final byte identifier;
+
+    public TLBTestProcess(byte identifier) {
+        super((char) identifier);
+        this.identifier = identifier;
+    }
+
+    @Override
+    public void main() throws InterruptedException {
+        if (identifier == 'A') {
+            checkTLB();
+        }
+        int address = OS.AllocateMemory(PAGES * PAGE_SIZE);
+        check(address == 0, "first allocation starts at virtual page 0 like the other instance's");
+        for (int i = 0; i < PAGES; i++) {
+            Hardware.Write(address + i * PAGE_SIZE, identifier);
+        }
+
+        for (int round = 0; round < ROUNDS; round++) {
+            // Let the other instance run and use the same virtual pages
+            int cpuBefore = cpu;
+            OS.Sleep(100);
+            // With more than one CPU the process may come back on another CPU, whose TLB never cached the page
+            if (cpu == cpuBefore) {
+                check(Hardware.TLB[cpu].lookup(asid, address / PAGE_SIZE) != null,
+                        "TLB entry of virtual page 0 survived a switch in round " + round);
+            }
+            boolean ok = true;
+            for (int i = 0; i < PAGES; i++) {
+                ok &= Hardware.Read(address + i * PAGE_SIZE) == identifier;
+            }
+            check(ok, "reads its own data from the shared virtual pages in round " + round);
+        }
+        OS.Exit();
+    }
+
+    // Checks a TLB of one set with two ways directly
+    private void checkTLB() {
+        boolean rejected = false;
+        try {
+            Hardware.configureTLB(0, 4);
+        } catch (IllegalArgumentException e) {
+            rejected = true;
+        }
+        check(rejected, "configureTLB rejects a TLB without sets");
+
+        TLB tlb = new TLB(1, 2);
+        VirtualToPhysicalMapping first = new VirtualToPhysicalMapping();
+        VirtualToPhysicalMapping second = new VirtualToPhysicalMapping();
+        VirtualToPhysicalMapping third = new VirtualToPhysicalMapping();
+        tlb.insert(1, 0, first);
+        tlb.insert(2, 0, second);
+        check(tlb.lookup(1, 0) == first && tlb.lookup(2, 0) == second,
+                "two address spaces cache the same virtual page side by side");
+
+        // Address space 1 was used last, so address space 2's entry is replaced
+        tlb.lookup(1, 0);
+        tlb.insert(3, 0, third);
+        check(tlb.lookup(2, 0) == null && tlb.lookup(1, 0) == first && tlb.lookup(3, 0) == third,
+                "least recently used way is replaced");
+
+        tlb.invalidateAll(1);
+        check(tlb.lookup(1, 0) == null && tlb.lookup(3, 0) == third,
+                "invalidateAll drops only the given address space");
+    }
+}
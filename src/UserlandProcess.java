@@ -1,7 +1,29 @@
 public abstract class UserlandProcess extends Process {
+    // Part a test process plays when its instances run different steps of one test, 0 if it has none.
+    // Printed with the results of check.
+    protected final char role;
+
+    public UserlandProcess() {
+        this((char) 0);
+    }
+
+    public UserlandProcess(char role) {
+        this.role = role;
+    }
+
     @Override
     public String toString() {
         return "UserlandProcess";
     }
 
+    // Prints the result of one check made by a test process, SUCCESS on System.out and FAILED on System.err
+    protected void check(boolean passed, String what) {
+        String name = getClass().getSimpleName() + (role == 0 ? "" : " [" + role + "]");
+        if (passed) {
+            System.out.println(name + ": SUCCESS " + what + ".");
+        } else {
+            System.err.println(name + ": FAILED " + what + ".");
+        }
+    }
+
 }
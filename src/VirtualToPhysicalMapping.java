@@ -12,6 +12,22 @@ public class VirtualToPhysicalMapping {
     // if it's not currently in RAM (or -1 if it hasn't been swapped out yet)
     public int diskPageNumber;
 
+    // The page's compressed contents while it is swapped out to the compressed pool (see CompressedPool), null
+    // otherwise. A page in the pool may still have a diskPageNumber, but that slot is out of date until the page is
+    // moved on to the swap file.
+    public byte[] compressed;
+
+    // Set while the page has never been written and is mapped read only to the kernel's shared zero frame. The
+    // hardware faults on a write to such a page so the kernel can give it a frame of its own (copy on write).
+    public volatile boolean copyOnWrite;
+
+    // Set by the hardware whenever the page is read or written, cleared by the kernel's clock hand as it sweeps
+    // past the frame (see Kernel.performPageSwap). A page that was not referenced since the last sweep is evicted.
+    public volatile boolean referenced;
+
+    // Set by the hardware when the page is written, so the frame's contents differ from its swap slot
+    public volatile boolean dirty;
+
     // Initializes the mapping to indicate the page is neither in physical memory nor on disk initially
     public VirtualToPhysicalMapping() {
         this.physicalPageNumber = -1; // -1 means not in RAM
@@ -0,0 +1,53 @@
+/**
+ * WordTestProcess tests the typed loads and stores of Hardware (readInt, writeLong, ...).
+ * Values are written and read back within a page and at offsets that straddle a page boundary, where Hardware
+ * assembles the value from both pages. The first straddling store goes to two pages that have never been touched,
+ * so both are mapped by the store itself, and a straddling load reads a page that was never written as zeroes.
+ * The bytes of a stored int are checked one by one to be little-endian.
+ */
+public class WordTestProcess extends UserlandProcess {
+
+    private static final int PAGE_SIZE = 1024;
+    private static final int PAGES = 4;
+
+    @Override
+    public void main() throws InterruptedException {
+        int base = OS.AllocateMemory(PAGES * PAGE_SIZE);
+        if (base == -1) {
+            System.err.println("WordTestProcess: FAILED allocation.");
+            OS.Exit();
+            return;
+        }
+
+        // Straddles pages 0 and 1, neither of which is mapped yet
+        int intAddress = base + PAGE_SIZE - 2;
+        Hardware.writeInt(intAddress, 0x12345678);
+        check(Hardware.readInt(intAddress) == 0x12345678, "int straddling two unmapped pages reads back");
+        check(Hardware.Read(intAddress) == 0x78 && Hardware.Read(intAddress + 3) == 0x12,
+                "int is stored little-endian across the boundary");
+
+        // Straddles pages 1 and 2; page 2 is not mapped yet
+        int longAddress = base + 2 * PAGE_SIZE - 3;
+        Hardware.writeLong(longAddress, 0x0123456789ABCDEFL);
+        check(Hardware.readLong(longAddress) == 0x0123456789ABCDEFL, "long straddling into an unmapped page reads back");
+
+        // Page 3 has never been written, the half of the value on it reads as zeroes
+        int zeroAddress = base + 3 * PAGE_SIZE - 4;
+        Hardware.writeInt(zeroAddress, -1);
+        check(Hardware.readLong(zeroAddress) == 0x00000000FFFFFFFFL, "long straddling into a page never written");
+
+        int doubleAddress = base + 3 * PAGE_SIZE - 1;
+        Hardware.writeDouble(doubleAddress, Math.PI);
+        check(Hardware.readDouble(doubleAddress) == Math.PI, "double straddling a page that was only read reads back");
+
+        // Within one page
+        Hardware.writeShort(base + 8, (short) -2);
+        Hardware.writeLong(base + 16, Long.MIN_VALUE);
+        Hardware.writeFloat(base + 24, 1.5f);
+        check(Hardware.readShort(base + 8) == -2 && Hardware.readLong(base + 16) == Long.MIN_VALUE
+                && Hardware.readFloat(base + 24) == 1.5f, "values within a page read back");
+
+        OS.FreeMemory(base, PAGES * PAGE_SIZE);
+        OS.Exit();
+    }
+}